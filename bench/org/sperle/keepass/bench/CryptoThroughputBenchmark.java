@@ -0,0 +1,244 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.sperle.keepass.crypto.Hash;
+import org.sperle.keepass.crypto.KdbCipher;
+import org.sperle.keepass.crypto.KeyTransform;
+import org.sperle.keepass.crypto.PasswordCipher;
+import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.crypto.bc.AESKeyTransform;
+import org.sperle.keepass.crypto.bc.RC4Cipher;
+import org.sperle.keepass.crypto.bc.SHA256Hash;
+import org.sperle.keepass.crypto.jce.JceAESCipher;
+import org.sperle.keepass.crypto.jce.JceAESKeyTransform;
+import org.sperle.keepass.crypto.jce.JceSHA256Hash;
+import org.sperle.keepass.monitor.ProgressMonitor;
+
+/**
+ * Measures the throughput of the crypto layer (bouncy castle and JCE backends): AES encryption/decryption
+ * and SHA-256 at several buffer sizes, RC4 password encryption latency and key transformation rounds.
+ * Compares the best iteration times with baseline times recorded on the same machine (less noisy
+ * than the mean) and exits with 1, if one got slower than the threshold or there is no baseline.
+ * Usage: CryptoThroughputBenchmark [baseline=file] [record=file] [threshold=20] (percent)
+ *                                  [warmup=2] [iterations=5] [time=200] (iteration time in ms)
+ */
+public class CryptoThroughputBenchmark {
+    private static final int[] BUFFER_SIZES = new int[] {1024, 64 * 1024, 1024 * 1024};
+    private static final int MESSAGES = 16;
+    private static final int MESSAGE_SIZE = 4096;
+    private static final int ROUNDS = 6000;
+    
+    private static final byte[] KEY = new byte[32];
+    private static final byte[] IV = new byte[16];
+    
+    private static Properties results = new Properties();
+    private static Vector names = new Vector();
+    
+    public static void main(String[] args) throws Exception {
+        String baselineFile = null;
+        String recordFile = null;
+        int threshold = 20;
+        int warmup = 2, iterations = 5, time = 200;
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].substring(0, args[i].indexOf('='));
+            String value = args[i].substring(args[i].indexOf('=') + 1);
+            if("baseline".equals(name)) baselineFile = value;
+            else if("record".equals(name)) recordFile = value;
+            else if("threshold".equals(name)) threshold = Integer.parseInt(value);
+            else if("warmup".equals(name)) warmup = Integer.parseInt(value);
+            else if("iterations".equals(name)) iterations = Integer.parseInt(value);
+            else if("time".equals(name)) time = Integer.parseInt(value);
+            else throw new IllegalArgumentException("unknown parameter: " + name);
+        }
+        
+        Harness harness = new Harness(warmup, iterations, time);
+        Harness.printHeader();
+        KdbCipher[] ciphers = new KdbCipher[] {new AESCipher(), new JceAESCipher()};
+        for (int i = 0; i < ciphers.length; i++) {
+            measureCipher(harness, ciphers[i]);
+        }
+        measureParallelDecryption(harness, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        Hash[] hashs = new Hash[] {new SHA256Hash(), new JceSHA256Hash()};
+        for (int i = 0; i < hashs.length; i++) {
+            measureHash(harness, hashs[i]);
+        }
+        measurePasswordCipher(harness, new RC4Cipher());
+        KeyTransform[] keyTransforms = new KeyTransform[] {new AESKeyTransform(false), new AESKeyTransform(true), new JceAESKeyTransform()};
+        for (int i = 0; i < keyTransforms.length; i++) {
+            measureKeyTransform(harness, keyTransforms[i], keyTransforms[i].getClass().getName() 
+                    + (keyTransforms[i] instanceof AESKeyTransform ? (i == 0 ? "(sequential)" : "(parallel)") : ""));
+        }
+        
+        if(recordFile != null) {
+            OutputStream out = new FileOutputStream(recordFile);
+            try {
+                results.store(out, "CryptoThroughputBenchmark baseline (best us/op)");
+            } finally {
+                out.close();
+            }
+            System.out.println("baseline recorded: " + recordFile);
+        }
+        if(baselineFile != null && !compare(baselineFile, threshold)) {
+            System.exit(1);
+        }
+    }
+    
+    private static void measureCipher(Harness harness, final KdbCipher cipher) throws Exception {
+        String backend = cipher.getClass().getName();
+        for (int i = 0; i < BUFFER_SIZES.length; i++) {
+            final byte[] plainText = new byte[BUFFER_SIZES[i]];
+            final byte[] cipherText = cipher.encrypt(KEY, plainText, IV, 1, true, null);
+            record(harness, backend + ".encrypt", BUFFER_SIZES[i], new Harness.Operation() {
+                public Object run() throws Exception {
+                    return cipher.encrypt(KEY, plainText, IV, 1, true, null);
+                }
+            });
+            record(harness, backend + ".decrypt", BUFFER_SIZES[i], new Harness.Operation() {
+                public Object run() throws Exception {
+                    return cipher.decrypt(KEY, cipherText, IV, null);
+                }
+            });
+        }
+    }
+    
+    private static void measureParallelDecryption(Harness harness, int numThreads) throws Exception {
+        final AESCipher cipher = new AESCipher(numThreads);
+        int size = BUFFER_SIZES[BUFFER_SIZES.length - 1];
+        final byte[] cipherText = cipher.encrypt(KEY, new byte[size], IV, 1, true, null);
+        record(harness, cipher.getClass().getName() + "(parallel).decrypt", size, new Harness.Operation() {
+            public Object run() throws Exception {
+                return cipher.decrypt(KEY, cipherText, IV, null);
+            }
+        });
+    }
+    
+    private static void measureHash(Harness harness, final Hash hash) throws Exception {
+        String backend = hash.getClass().getName();
+        for (int i = 0; i < BUFFER_SIZES.length; i++) {
+            final byte[][] message = new byte[][] {new byte[BUFFER_SIZES[i]]};
+            record(harness, backend + ".getHash", BUFFER_SIZES[i], new Harness.Operation() {
+                public Object run() throws Exception {
+                    return hash.getHash(message, null);
+                }
+            });
+        }
+        final byte[][] messages = new byte[MESSAGES][MESSAGE_SIZE];
+        record(harness, backend + ".getHash(" + MESSAGES + " messages)", MESSAGES * MESSAGE_SIZE, new Harness.Operation() {
+            public Object run() throws Exception {
+                return hash.getHash(messages, null);
+            }
+        });
+    }
+    
+    private static void measurePasswordCipher(Harness harness, final PasswordCipher cipher) throws Exception {
+        String backend = cipher.getClass().getName();
+        cipher.init(new byte[cipher.getKeyLength()]);
+        final byte[] password = "a typical password".getBytes("UTF-8");
+        final byte[] encrypted = cipher.encrypt(password);
+        record(harness, backend + ".encrypt", 0, new Harness.Operation() {
+            public Object run() throws Exception {
+                return cipher.encrypt(password);
+            }
+        });
+        record(harness, backend + ".decrypt", 0, new Harness.Operation() {
+            public Object run() throws Exception {
+                return cipher.decrypt(encrypted);
+            }
+        });
+    }
+    
+    private static void measureKeyTransform(Harness harness, final KeyTransform keyTransform, String backend) throws Exception {
+        final byte[] key = new byte[32];
+        Harness.Result result = harness.measure(backend + ".transform", "rounds=" + ROUNDS, new Harness.Operation() {
+            public Object run() throws Exception {
+                return keyTransform.transform(KEY, key, ROUNDS, new ProgressMonitor());
+            }
+        });
+        String name = backend + ".transform rounds=" + ROUNDS;
+        System.out.println("  -> " + (long)(ROUNDS * 1000000.0 / result.mean) + " rounds/s");
+        results.put(name, String.valueOf(result.best));
+        names.addElement(name);
+    }
+    
+    /**
+     * Measures the operation and stores its time per operation (also prints MB/s, if bytes > 0).
+     */
+    private static void record(Harness harness, String benchmark, int bytes, Harness.Operation operation) throws Exception {
+        String params = bytes > 0 ? "bytes=" + bytes : "";
+        Harness.Result result = harness.measure(benchmark, params, operation);
+        if(bytes > 0) System.out.println("  -> " + Math.round(bytes / result.mean * 100) / 100.0 + " MB/s");
+        String name = benchmark + (bytes > 0 ? " " + params : "");
+        results.put(name, String.valueOf(result.best));
+        names.addElement(name);
+    }
+    
+    /**
+     * Compares the results with the baseline, returns false if one of them regressed more than the threshold.
+     */
+    private static boolean compare(String baselineFile, int threshold) throws Exception {
+        if(!new File(baselineFile).isFile()) {
+            System.err.println("No baseline " + baselineFile + ": baselines are machine specific, record one on this machine first with record=" + baselineFile);
+            return false;
+        }
+        Properties baseline = new Properties();
+        InputStream in = new FileInputStream(baselineFile);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+        
+        boolean passed = true;
+        System.out.println();
+        System.out.println("benchmark\tbaseline us/op\tbest us/op\tchange %\tresult");
+        for (int i = 0; i < names.size(); i++) {
+            String name = (String)names.elementAt(i);
+            String base = baseline.getProperty(name);
+            if(base == null) {
+                System.out.println(name + "\t-\t" + results.getProperty(name) + "\t-\tNEW");
+                continue;
+            }
+            double baseUs = Double.parseDouble(base);
+            double us = Double.parseDouble(results.getProperty(name));
+            long change = Math.round((us - baseUs) * 100 / baseUs);
+            boolean regressed = change > threshold;
+            if(regressed) passed = false;
+            System.out.println(name + "\t" + base + "\t" + us + "\t" + change + "\t" + (regressed ? "REGRESSION" : "OK"));
+        }
+        for (Enumeration e = baseline.propertyNames(); e.hasMoreElements();) {
+            String name = (String)e.nextElement();
+            if(!results.containsKey(name)) System.out.println(name + "\t" + baseline.getProperty(name) + "\t-\t-\tMISSING");
+        }
+        System.out.println(passed ? "all within " + threshold + "% of the baseline" : "regression of more than " + threshold + "%");
+        return passed;
+    }
+}
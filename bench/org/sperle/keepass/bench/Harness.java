@@ -0,0 +1,116 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.bench;
+
+/**
+ * Minimal benchmark harness: runs an operation for some warm up iterations, then
+ * measures some iterations (each runs the operation repeatedly for at least the
+ * iteration time) and prints the mean time per operation and its standard deviation.
+ */
+final class Harness {
+    /**
+     * The measured operation, returns a result, so the JIT can not eliminate the work.
+     */
+    interface Operation {
+        Object run() throws Exception;
+    }
+    
+    /**
+     * The result of a measurement (times in us per operation).
+     */
+    static final class Result {
+        final double mean;
+        final double error;
+        final double best;
+        
+        Result(double mean, double error, double best) {
+            this.mean = mean;
+            this.error = error;
+            this.best = best;
+        }
+    }
+    
+    static volatile Object sink;
+    
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationTime;
+    
+    Harness(int warmupIterations, int iterations, long iterationTime) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationTime = iterationTime;
+    }
+    
+    static void printHeader() {
+        System.out.println("benchmark\tparams\tus/op\terror\tops");
+    }
+    
+    /**
+     * Measures the operation and prints one result line.
+     */
+    Result measure(String name, String params, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+        double[] results = new double[iterations];
+        long ops = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] iteration = iteration(operation);
+            results[i] = iteration[0] / 1000.0 / iteration[1];
+            ops += iteration[1];
+        }
+        double mean = 0;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < results.length; i++) {
+            mean += results[i];
+            best = Math.min(best, results[i]);
+        }
+        mean /= results.length;
+        double variance = 0;
+        for (int i = 0; i < results.length; i++) {
+            variance += (results[i] - mean) * (results[i] - mean);
+        }
+        double error = results.length > 1 ? Math.sqrt(variance / (results.length - 1)) : 0;
+        System.out.println(name + "\t" + params + "\t" + format(mean) + "\t" + format(error) + "\t" + ops);
+        return new Result(mean, error, best);
+    }
+    
+    /**
+     * Runs the operation for at least the iteration time, returns the elapsed ns and number of operations.
+     */
+    private long[] iteration(Operation operation) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink = operation.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < iterationTime * 1000000);
+        return new long[] {elapsed, ops};
+    }
+    
+    private static String format(double d) {
+        return String.valueOf(Math.round(d * 100) / 100.0);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.bench;
+
+import java.io.File;
+import java.util.Vector;
+
+import org.sperle.keepass.KeePassMobileIO;
+import org.sperle.keepass.KeePassMobileIOFactory;
+import org.sperle.keepass.crypto.CryptoManager;
+import org.sperle.keepass.crypto.KeyTransform;
+import org.sperle.keepass.io.IOManager;
+import org.sperle.keepass.io.nio.NioIOManager;
+import org.sperle.keepass.kdb.KdbGroup;
+import org.sperle.keepass.kdb.KeePassDatabase;
+import org.sperle.keepass.kdb.SearchOptions;
+import org.sperle.keepass.rand.Random;
+
+/**
+ * Benchmarks the hot paths (load, save, search, group tree navigation and key transformation)
+ * on synthetic databases, for every combination of the given parameters.
+ * Usage: KdbBenchmark [entries=1000,10000] [attachment=0,4096] [rounds=6000]
+ *                     [warmup=3] [iterations=5] [time=500] (iteration time in ms)
+ */
+public class KdbBenchmark {
+    private static int[] entries = new int[] {1000, 10000};
+    private static int[] attachmentSizes = new int[] {0, 4096};
+    private static int[] rounds = new int[] {6000};
+    private static int warmup = 3;
+    private static int iterations = 5;
+    private static int time = 500;
+    
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].substring(0, args[i].indexOf('='));
+            int[] values = parse(args[i].substring(args[i].indexOf('=') + 1));
+            if("entries".equals(name)) entries = values;
+            else if("attachment".equals(name)) attachmentSizes = values;
+            else if("rounds".equals(name)) rounds = values;
+            else if("warmup".equals(name)) warmup = values[0];
+            else if("iterations".equals(name)) iterations = values[0];
+            else if("time".equals(name)) time = values[0];
+            else throw new IllegalArgumentException("unknown parameter: " + name);
+        }
+        
+        final CryptoManager[] cryptoManager = new CryptoManager[1];
+        KeePassMobileIOFactory factory = new KeePassMobileIOFactory() {
+            protected IOManager createIOManager() {
+                return new NioIOManager();
+            }
+            protected CryptoManager createCryptoManager(Random rand) {
+                cryptoManager[0] = super.createCryptoManager(rand);
+                return cryptoManager[0];
+            }
+        };
+        // the password cipher of a crypto manager is shared by all its databases:
+        // the benchmarked database and the loaded ones need their own instances
+        KeePassMobileIO io = factory.create();
+        KeePassMobileIO loadIo = factory.create();
+        Harness harness = new Harness(warmup, iterations, time);
+        Harness.printHeader();
+        
+        for (int r = 0; r < rounds.length; r++) {
+            final KeyTransform keyTransform = cryptoManager[0].getKeyTransform("AES");
+            final int numRounds = rounds[r];
+            final byte[] seed = new byte[32];
+            final byte[] key = new byte[32];
+            harness.measure("keyTransform", "rounds=" + numRounds, new Harness.Operation() {
+                public Object run() throws Exception {
+                    return keyTransform.transform(seed, key, numRounds, null);
+                }
+            });
+            
+            for (int e = 0; e < entries.length; e++) {
+                for (int a = 0; a < attachmentSizes.length; a++) {
+                    String params = "entries=" + entries[e] + ",attachment=" + attachmentSizes[a] + ",rounds=" + numRounds;
+                    run(harness, io, loadIo, params, entries[e], attachmentSizes[a], numRounds);
+                }
+            }
+        }
+    }
+    
+    private static void run(Harness harness, final KeePassMobileIO io, final KeePassMobileIO loadIo, String params, final int numEntries, int attachmentSize, int numRounds) throws Exception {
+        final File file = File.createTempFile("kdbbenchmark", ".kdb");
+        try {
+            final KeePassDatabase kdb = KdbGenerator.create(io, numEntries, attachmentSize, numRounds);
+            io.save(kdb, file.getPath(), null);
+            
+            harness.measure("load", params, new Harness.Operation() {
+                public Object run() throws Exception {
+                    KeePassDatabase loaded = loadIo.load(file.getPath(), KdbGenerator.PASSWORD, null, true, null);
+                    loadIo.close(loaded);
+                    return loaded;
+                }
+            });
+            harness.measure("save", params, new Harness.Operation() {
+                public Object run() throws Exception {
+                    return Boolean.valueOf(io.save(kdb, file.getPath(), null));
+                }
+            });
+            
+            final SearchOptions options = new SearchOptions();
+            options.searchResultsMax = SearchOptions.MAX_SEARCH_RESULTS;
+            harness.measure("search", params, new Harness.Operation() {
+                public Object run() throws Exception {
+                    return kdb.search("entry " + (numEntries / 2), options, null); // matches the notes of few entries
+                }
+            });
+            
+            final Vector groups = kdb.getGroups();
+            harness.measure("getChildGroups", params, new Harness.Operation() {
+                public Object run() throws Exception {
+                    int children = 0;
+                    for (int i = 0; i < groups.size(); i++) {
+                        children += kdb.getChildGroups((KdbGroup)groups.elementAt(i)).size();
+                    }
+                    return new Integer(children);
+                }
+            });
+            harness.measure("getParentGroup", params, new Harness.Operation() {
+                public Object run() throws Exception {
+                    int parents = 0;
+                    for (int i = 0; i < groups.size(); i++) {
+                        if(kdb.getParentGroup((KdbGroup)groups.elementAt(i)) != null) parents++;
+                    }
+                    return new Integer(parents);
+                }
+            });
+            io.close(kdb);
+        } finally {
+            file.delete();
+        }
+    }
+    
+    private static int[] parse(String values) {
+        Vector v = new Vector();
+        int start = 0;
+        for (int i = 0; i <= values.length(); i++) {
+            if(i == values.length() || values.charAt(i) == ',') {
+                v.addElement(values.substring(start, i));
+                start = i + 1;
+            }
+        }
+        int[] parsed = new int[v.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = Integer.parseInt((String)v.elementAt(i));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.bench;
+
+import java.util.Vector;
+
+import org.sperle.keepass.KeePassMobileIO;
+import org.sperle.keepass.kdb.KdbEntry;
+import org.sperle.keepass.kdb.KdbGroup;
+import org.sperle.keepass.kdb.KeePassDatabase;
+import org.sperle.keepass.util.Passwords;
+
+/**
+ * Generates synthetic KeePass databases: a tree of groups (every group has up to
+ * GROUP_FAN_OUT sub groups) with the entries spread over all groups.
+ */
+final class KdbGenerator {
+    static final String PASSWORD = "password";
+    
+    private static final int ENTRIES_PER_GROUP = 20;
+    private static final int GROUP_FAN_OUT = 4;
+    
+    private KdbGenerator() {
+    }
+    
+    /**
+     * Creates a database with the given number of entries, every entry with an attachment 
+     * of the given size (none if 0) and the given number of key encryption rounds.
+     */
+    static KeePassDatabase create(KeePassMobileIO io, int numEntries, int attachmentSize, int rounds) throws Exception {
+        KeePassDatabase kdb = io.create("bench", PASSWORD, null, true);
+        kdb.setNumKeyEncRounds(rounds);
+        
+        int numGroups = Math.max(1, numEntries / ENTRIES_PER_GROUP);
+        Vector groups = new Vector();
+        for (int i = 0; i < numGroups; i++) {
+            KdbGroup parent = i == 0 ? null : (KdbGroup)groups.elementAt((i - 1) / GROUP_FAN_OUT);
+            KdbGroup group = kdb.createGroup(parent);
+            group.setName("Group " + i);
+            groups.addElement(group);
+        }
+        
+        byte[] attachment = new byte[attachmentSize];
+        for (int i = 0; i < attachment.length; i++) {
+            attachment[i] = (byte)i;
+        }
+        for (int i = 0; i < numEntries; i++) {
+            KdbEntry entry = kdb.createEntry((KdbGroup)groups.elementAt(i % numGroups));
+            entry.setTitle("Entry " + i);
+            entry.setUsername("user" + i);
+            entry.setUrl("https://www.example.com/" + i);
+            entry.setPassword(Passwords.fromString("password" + i));
+            entry.setNotes("Some notes for entry " + i);
+            if(attachmentSize > 0) entry.addAttachment("attachment" + i + ".bin", attachment);
+        }
+        return kdb;
+    }
+}
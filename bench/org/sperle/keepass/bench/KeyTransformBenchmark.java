@@ -0,0 +1,76 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.bench;
+
+import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.crypto.KeyTransform;
+import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.crypto.bc.AESKeyTransform;
+import org.sperle.keepass.crypto.jce.JceAESKeyTransform;
+import org.sperle.keepass.monitor.ProgressMonitor;
+
+/**
+ * Measures the rounds per second of the master key transformation: the old
+ * AESCipher path, the AESKeyTransform engine (sequential and parallel) and
+ * the JCE key transformation.
+ * Usage: KeyTransformBenchmark [rounds] (default: 1000000)
+ */
+public class KeyTransformBenchmark {
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 3;
+    
+    private static final byte[] SEED = new byte[32];
+    private static final byte[] KEY = new byte[32];
+    
+    public static void main(String[] args) throws Exception {
+        int rounds = 1000000;
+        if(args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        
+        System.out.println("transform\trounds/s");
+        measure("AESCipher", new KeyTransform() {
+            private final AESCipher aes = new AESCipher();
+            public String getName() {
+                return "AESCipher";
+            }
+            public byte[] transform(byte[] seed, byte[] key, int rounds, ProgressMonitor pm) throws KeePassCryptoException {
+                return aes.encrypt(seed, key, null, rounds, false, pm);
+            }
+        }, rounds);
+        measure("AESKeyTransform (sequential)", new AESKeyTransform(false), rounds);
+        measure("AESKeyTransform (parallel)", new AESKeyTransform(true), rounds);
+        measure("JceAESKeyTransform", new JceAESKeyTransform(), rounds);
+    }
+    
+    private static void measure(String name, KeyTransform keyTransform, int rounds) throws Exception {
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            keyTransform.transform(SEED, KEY, rounds, new ProgressMonitor());
+        }
+        long start = System.currentTimeMillis();
+        for (int run = 0; run < RUNS; run++) {
+            keyTransform.transform(SEED, KEY, rounds, new ProgressMonitor());
+        }
+        long ms = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(name + "\t" + ((long)rounds * RUNS * 1000 / ms));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.bench;
+
+import java.io.File;
+
+import org.sperle.keepass.KeePassMobileIO;
+import org.sperle.keepass.KeePassMobileIOFactory;
+import org.sperle.keepass.io.IOManager;
+import org.sperle.keepass.io.nio.NioIOManager;
+import org.sperle.keepass.kdb.KdbEntry;
+import org.sperle.keepass.kdb.KdbGroup;
+import org.sperle.keepass.kdb.KeePassDatabase;
+import org.sperle.keepass.util.Passwords;
+
+/**
+ * Measures how the save time grows with the number of entries (should be linear).
+ * Usage: SaveBenchmark [number of entries...] (default: 1000 10000 100000)
+ */
+public class SaveBenchmark {
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+    
+    public static void main(String[] args) throws Exception {
+        int[] sizes = new int[] {1000, 10000, 100000};
+        if(args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        KeePassMobileIO io = new KeePassMobileIOFactory() {
+            protected IOManager createIOManager() {
+                return new NioIOManager();
+            }
+        }.create();
+        File file = File.createTempFile("savebenchmark", ".kdb");
+        try {
+            System.out.println("entries\tms/save\tus/entry");
+            for (int i = 0; i < sizes.length; i++) {
+                KeePassDatabase kdb = createDatabase(io, sizes[i]);
+                for (int run = 0; run < WARMUP_RUNS; run++) {
+                    io.save(kdb, file.getPath(), null);
+                }
+                long start = System.currentTimeMillis();
+                for (int run = 0; run < RUNS; run++) {
+                    io.save(kdb, file.getPath(), null);
+                }
+                double ms = (System.currentTimeMillis() - start) / (double)RUNS;
+                System.out.println(sizes[i] + "\t" + ms + "\t" + (ms * 1000 / sizes[i]));
+                io.close(kdb);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+    
+    static KeePassDatabase createDatabase(KeePassMobileIO io, int numEntries) throws Exception {
+        KeePassDatabase kdb = io.create("bench", "password", null, true);
+        KdbGroup group = kdb.createGroup(null);
+        group.setName("Group");
+        for (int i = 0; i < numEntries; i++) {
+            KdbEntry entry = kdb.createEntry(group);
+            entry.setTitle("Entry " + i);
+            entry.setUsername("user" + i);
+            entry.setUrl("https://www.example.com/" + i);
+            entry.setPassword(Passwords.fromString("password" + i));
+            entry.setNotes("Some notes for entry " + i);
+        }
+        return kdb;
+    }
+}
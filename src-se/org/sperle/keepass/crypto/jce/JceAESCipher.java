@@ -0,0 +1,166 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.crypto.jce;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.sperle.keepass.crypto.KdbCipher;
+import org.sperle.keepass.crypto.KdbCipherSession;
+import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+/**
+ * The AES cipher using the Java Cryptography Extension (Java SE only). The JCE
+ * provider of the JVM can use the AES instructions of the CPU. Drop-in replacement
+ * for the bouncy castle AESCipher (same name, same results).
+ */
+public final class JceAESCipher implements KdbCipher {
+    public static final String NAME = "AES";
+    
+    static final int BLOCK_SIZE = 16;
+    // number of bytes processed between two progress ticks
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // number of rounds processed between two progress ticks
+    private static final int ROUNDS_INTERVAL = 4096;
+    
+    public String getName() {
+        return NAME;
+    }
+    
+    public byte[] encrypt(byte[] key, byte[] plainText, byte[] iv, int rounds, boolean padding, ProgressMonitor pm) throws KeePassCryptoException {
+        byte[] buffer = null;
+        try {
+            Cipher cipher = createCipher(Cipher.ENCRYPT_MODE, key, padding ? iv : null, padding);
+            
+            if(pm != null) {
+                if(rounds == 1) pm.nextStep(plainText.length / BLOCK_SIZE, "pm_encrypt"); // count length (database)
+                else if (rounds > 1) pm.nextStep(rounds, "pm_encrypt"); // count rounds (master password)
+            }
+            
+            if(padding) {
+                byte[] cipherText = new byte[cipher.getOutputSize(plainText.length)];
+                int outLength = process(cipher, plainText, cipherText, rounds == 1 ? pm : null);
+                if(outLength == -1) return null; // user canceled
+                cipher.doFinal(cipherText, outLength);
+                return cipherText;
+            }
+            
+            // no padding: first round and all further rounds (key transformation), 
+            // ping-pong between two arrays, because the JCE copies overlapping input
+            byte[] cipherText = new byte[plainText.length];
+            buffer = new byte[plainText.length];
+            cipher.update(plainText, 0, plainText.length, cipherText, 0);
+            for (int i = 1; i < rounds; i++) {
+                cipher.update(cipherText, 0, cipherText.length, buffer, 0);
+                byte[] swap = cipherText;
+                cipherText = buffer;
+                buffer = swap;
+                if(pm != null && i % ROUNDS_INTERVAL == 0) {
+                    if(pm.isCanceled()) return null;
+                    pm.tick(ROUNDS_INTERVAL);
+                }
+            }
+            if(pm != null && rounds > 1) pm.tick(rounds % ROUNDS_INTERVAL);
+            return cipherText;
+        } catch (GeneralSecurityException e) {
+            throw new KeePassCryptoException("Exception during AES encryption: " + e.getMessage());
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(buffer, (byte)0);
+        }
+    }
+    
+    public byte[] decrypt(byte[] key, byte[] cipherText, byte[] iv, ProgressMonitor pm) throws KeePassCryptoException {
+        byte[] plainText = new byte[cipherText.length];
+        int outLength = decrypt(key, cipherText, 0, cipherText.length, iv, plainText, 0, pm);
+        if(outLength == -1) return null; // user canceled
+        return (outLength < plainText.length) ? ByteArrays.cut(plainText, outLength) : plainText;
+    }
+    
+    public int decrypt(byte[] key, byte[] cipherText, int offset, int length, byte[] iv, byte[] out, int outOffset, ProgressMonitor pm) throws KeePassCryptoException {
+        try {
+            // JCE ciphers are copy-safe, so the output may overlap the input
+            Cipher cipher = createCipher(Cipher.DECRYPT_MODE, key, iv, true);
+            if(pm != null) pm.nextStep(length / BLOCK_SIZE, "pm_decrypt");
+            int outLength = process(cipher, cipherText, offset, length, out, outOffset, pm);
+            if(outLength == -1) return -1; // user canceled
+            return outLength + cipher.doFinal(out, outOffset + outLength);
+        } catch (GeneralSecurityException e) {
+            throw new KeePassCryptoException("Exception during AES decryption: " + e.getMessage());
+        }
+    }
+    
+    public KdbCipherSession startDecryption(byte[] key, byte[] iv) throws KeePassCryptoException {
+        try {
+            return new JceAESCipherSession(createCipher(Cipher.DECRYPT_MODE, key, iv, true));
+        } catch (GeneralSecurityException e) {
+            throw new KeePassCryptoException("Exception during AES decryption: " + e.getMessage());
+        }
+    }
+    
+    public KdbCipherSession startEncryption(byte[] key, byte[] iv) throws KeePassCryptoException {
+        try {
+            return new JceAESCipherSession(createCipher(Cipher.ENCRYPT_MODE, key, iv, true));
+        } catch (GeneralSecurityException e) {
+            throw new KeePassCryptoException("Exception during AES encryption: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Creates an initialized AES cipher: CBC with PKCS#5 padding (zero IV, if none given),
+     * or ECB without padding.
+     */
+    static Cipher createCipher(int mode, byte[] key, byte[] iv, boolean padding) throws GeneralSecurityException {
+        if(!padding) {
+            Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+            cipher.init(mode, new SecretKeySpec(key, "AES"));
+            return cipher;
+        }
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv != null ? iv : new byte[BLOCK_SIZE]));
+        return cipher;
+    }
+    
+    /**
+     * Processes the input in chunks, so the progress monitor can be updated (returns -1, if user canceled).
+     */
+    private static int process(Cipher cipher, byte[] in, byte[] out, ProgressMonitor pm) throws GeneralSecurityException {
+        return process(cipher, in, 0, in.length, out, 0, pm);
+    }
+    
+    private static int process(Cipher cipher, byte[] in, int inOffset, int inLength, byte[] out, int outOffset, ProgressMonitor pm) throws GeneralSecurityException {
+        int outLength = 0;
+        for (int offset = inOffset; offset < inOffset + inLength; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, inOffset + inLength - offset);
+            outLength += cipher.update(in, offset, length, out, outOffset + outLength);
+            if(pm != null) {
+                if(pm.isCanceled()) return -1;
+                pm.tick(length / BLOCK_SIZE);
+            }
+        }
+        return outLength;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.crypto.jce;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+import org.sperle.keepass.crypto.KdbCipherSession;
+import org.sperle.keepass.crypto.KeePassCryptoException;
+
+/**
+ * Block by block AES encryption/decryption using the JCE.
+ */
+final class JceAESCipherSession implements KdbCipherSession {
+    private final Cipher cipher;
+    
+    JceAESCipherSession(Cipher cipher) {
+        this.cipher = cipher;
+    }
+    
+    public int getUpdateOutputSize(int length) {
+        return cipher.getOutputSize(length);
+    }
+    
+    public int update(byte[] in, int inOffset, int length, byte[] out, int outOffset) throws KeePassCryptoException {
+        try {
+            return cipher.update(in, inOffset, length, out, outOffset);
+        } catch (GeneralSecurityException e) {
+            throw new KeePassCryptoException("Exception during AES processing: " + e.getMessage());
+        }
+    }
+    
+    public int doFinal(byte[] out, int outOffset) throws KeePassCryptoException {
+        try {
+            return cipher.doFinal(out, outOffset);
+        } catch (GeneralSecurityException e) {
+            throw new KeePassCryptoException("Exception during AES processing: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.crypto.jce;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.crypto.KeyTransform;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+/**
+ * The AES key transformation using the JCE (AES/ECB, Java SE only). All blocks of the
+ * key are encrypted with one cipher call per round, the JCE provider can pipeline them
+ * with the AES instructions of the CPU. The result is the same as AESKeyTransform.
+ */
+public final class JceAESKeyTransform implements KeyTransform {
+    public static final String NAME = "AES";
+    
+    /** Number of rounds between two progress ticks (and cancel checks). */
+    static final int PROGRESS_INTERVAL = 4096;
+    
+    public String getName() {
+        return NAME;
+    }
+    
+    public byte[] transform(byte[] seed, byte[] key, int rounds, ProgressMonitor pm) throws KeePassCryptoException {
+        if(key.length == 0 || key.length % JceAESCipher.BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("key length must be a multiple of the AES block size");
+        }
+        if(rounds < 1) rounds = 1; // like AESCipher: first round is always processed
+        if(pm != null) pm.nextStep((rounds + PROGRESS_INTERVAL - 1) / PROGRESS_INTERVAL, "pm_encrypt");
+        
+        // ping-pong between two arrays, because the JCE copies overlapping input
+        byte[] block = ByteArrays.returnCopy(key);
+        byte[] buffer = new byte[key.length];
+        try {
+            Cipher cipher = JceAESCipher.createCipher(Cipher.ENCRYPT_MODE, seed, null, false);
+            int remaining = rounds;
+            while(remaining > 0) {
+                int n = remaining < PROGRESS_INTERVAL ? remaining : PROGRESS_INTERVAL;
+                for (int i = 0; i < n; i++) {
+                    cipher.update(block, 0, block.length, buffer, 0);
+                    byte[] swap = block;
+                    block = buffer;
+                    buffer = swap;
+                }
+                remaining -= n;
+                if(pm != null) {
+                    if(pm.isCanceled()) return null;
+                    pm.tick();
+                }
+            }
+            return ByteArrays.returnCopy(block);
+        } catch (GeneralSecurityException e) {
+            throw new KeePassCryptoException("Exception during AES key transformation: " + e.getMessage());
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(block, (byte)0);
+            ByteArrays.fillCompletelyWith(buffer, (byte)0);
+        }
+    }
+}
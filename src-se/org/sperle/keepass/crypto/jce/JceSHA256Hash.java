@@ -0,0 +1,82 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.crypto.jce;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.sperle.keepass.crypto.Hash;
+import org.sperle.keepass.crypto.HashSession;
+import org.sperle.keepass.monitor.ProgressMonitor;
+
+/**
+ * The SHA-256 hash using the JCE (Java SE only). Drop-in replacement for the
+ * bouncy castle SHA256Hash (same name, same results).
+ */
+public final class JceSHA256Hash implements Hash {
+    public static final String NAME = "SHA256";
+    private static final int DWORD_LENGTH = 4;
+    // number of bytes hashed between two progress ticks
+    private static final int CHUNK_SIZE = 64 * 1024;
+    
+    public String getName() {
+        return NAME;
+    }
+    
+    public byte[] getHash(byte[][] messages, ProgressMonitor pm) {
+        MessageDigest md = createDigest();
+        if(pm != null) pm.nextStep(sumLength(messages) / DWORD_LENGTH, "pm_hash");
+        int hashed = 0;
+        for (int i = 0; i < messages.length; i++) {
+            for (int offset = 0; offset < messages[i].length; offset += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, messages[i].length - offset);
+                md.update(messages[i], offset, length);
+                if(pm != null) {
+                    if(pm.isCanceled()) return null;
+                    pm.tick((hashed + length) / DWORD_LENGTH - hashed / DWORD_LENGTH);
+                }
+                hashed += length;
+            }
+        }
+        return md.digest();
+    }
+    
+    public HashSession startHash() {
+        return new JceSHA256HashSession(createDigest());
+    }
+    
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { // every Java SE platform must support SHA-256
+            throw new IllegalStateException("SHA-256 not supported: " + e.getMessage());
+        }
+    }
+    
+    private int sumLength(byte[][] messages) {
+        int sum = 0;
+        for (int i = 0; i < messages.length; i++) {
+            sum += messages[i].length;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.crypto.jce;
+
+import java.security.MessageDigest;
+
+import org.sperle.keepass.crypto.HashSession;
+
+/**
+ * Incremental SHA-256 hash calculation using the JCE.
+ */
+final class JceSHA256HashSession implements HashSession {
+    private final MessageDigest md;
+    
+    JceSHA256HashSession(MessageDigest md) {
+        this.md = md;
+    }
+    
+    public void update(byte[] message, int offset, int length) {
+        md.update(message, offset, length);
+    }
+    
+    public byte[] doFinal() {
+        return md.digest();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.io.nio;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.sperle.keepass.io.IOManager;
+import org.sperle.keepass.io.SaveSession;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+/**
+ * IO manager for Java SE (desktop/server), that uses NIO file channels.
+ * openInputStream() reads directly from the file channel, so the streaming load
+ * modes of the KeePassDatabaseManagerV1 decrypt the file without ever copying it
+ * into the heap as a whole. Files are not memory mapped: a mapping stays alive
+ * until it is garbage collected and would prevent replacing the file on save
+ * on some platforms (e.g. Windows). Files are saved durably and replaced
+ * atomically.
+ */
+public class NioIOManager implements IOManager {
+    // size of the parts that are read from a file channel between two progress monitor ticks
+    private static final int LOAD_BLOCK_SIZE = 64 * 1024;
+    
+    public boolean exists(String filename) throws IOException {
+        return new File(filename).exists();
+    }
+    
+    public byte[] loadBinary(String filename, ProgressMonitor pm) throws IOException {
+        FileChannel channel = FileChannel.open(getExistingFile(filename).toPath(), StandardOpenOption.READ);
+        try {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File [" + filename + "] is too big!");
+            }
+            byte[] file = new byte[(int)channel.size()];
+            if(pm != null) pm.nextStep(file.length / LOAD_BLOCK_SIZE + 1, "pm_load");
+            ByteBuffer buffer = ByteBuffer.wrap(file);
+            while(buffer.hasRemaining()) {
+                buffer.limit(Math.min(buffer.position() + LOAD_BLOCK_SIZE, file.length));
+                while(buffer.hasRemaining()) {
+                    if(channel.read(buffer) < 0) throw new EOFException("File [" + filename + "] was truncated!");
+                }
+                buffer.limit(file.length);
+                if(pm != null) {
+                    if(pm.isCanceled()) {
+                        ByteArrays.fillCompletelyWith(file, (byte)0);
+                        return null;
+                    }
+                    pm.tick();
+                }
+            }
+            return file;
+        } finally {
+            channel.close();
+        }
+    }
+    
+    public InputStream openInputStream(String filename) throws IOException {
+        return Channels.newInputStream(FileChannel.open(getExistingFile(filename).toPath(), StandardOpenOption.READ));
+    }
+    
+    /**
+     * Saves the file through a save session: the data is written into a temporary file
+     * next to the target file, forced to disk and then atomically replaces the target
+     * file. So there is always either the old or the new file, even if the system
+     * crashes during saving.
+     */
+    public void saveBinary(String filename, byte[] binary, ProgressMonitor pm) throws IOException {
+        if(pm != null) pm.nextStep(1, "pm_save");
+        SaveSession session = startSave(filename);
+        try {
+            session.write(binary, 0, binary.length);
+            session.commit();
+        } finally {
+            session.abort(); // no effect after commit
+        }
+        if(pm != null) pm.tick();
+    }
+    
+    public SaveSession startSave(String filename) throws IOException {
+        Path file = Paths.get(filename).toAbsolutePath();
+        Path tempFile = Files.createTempFile(file.getParent(), getBasename(file), ".tmp");
+        boolean started = false;
+        try {
+            SaveSession session = new NioSaveSession(this, file, tempFile,
+                    FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+            started = true;
+            return session;
+        } finally {
+            if(!started) Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) { // e.g. some network file systems
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(target.getParent());
+    }
+    
+    // makes the rename durable (not supported on all platforms, e.g. Windows)
+    private void forceDirectory(Path dir) {
+        try {
+            FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {}
+    }
+    
+    private String getBasename(Path file) {
+        String basename = file.getFileName().toString();
+        int fileTypeDelim = basename.lastIndexOf('.');
+        return fileTypeDelim > 0 ? basename.substring(0, fileTypeDelim) + "_" : basename + "_";
+    }
+    
+    public void delete(String filename) throws IOException {
+        File file = new File(filename);
+        if(file.exists() && !file.delete()) {
+            throw new IOException("Could not delete file [" + filename + "]!");
+        }
+    }
+    
+    public long getFileSize(String filename) throws IOException {
+        return getExistingFile(filename).length();
+    }
+    
+    public boolean equals(String filename1, String filename2) throws IOException {
+        if(getFileSize(filename1) != getFileSize(filename2)) return false;
+        InputStream is1 = openInputStream(filename1);
+        InputStream is2 = null;
+        try {
+            is2 = openInputStream(filename2);
+            byte[] block1 = new byte[LOAD_BLOCK_SIZE];
+            byte[] block2 = new byte[LOAD_BLOCK_SIZE];
+            int read;
+            while((read = readFully(is1, block1)) > 0) {
+                if(readFully(is2, block2) != read) return false;
+                for (int i = 0; i < read; i++) {
+                    if(block1[i] != block2[i]) return false;
+                }
+            }
+            return is2.read() == -1;
+        } finally {
+            is1.close();
+            if(is2 != null) is2.close();
+        }
+    }
+    
+    private int readFully(InputStream is, byte[] b) throws IOException {
+        int read = 0;
+        int n;
+        while(read < b.length && (n = is.read(b, read, b.length - read)) > -1) {
+            read += n;
+        }
+        return read;
+    }
+    
+    private File getExistingFile(String filename) throws FileNotFoundException {
+        File file = new File(filename);
+        if(!file.isFile()) {
+            throw new FileNotFoundException("File [" + filename + "] does not exist!");
+        }
+        return file;
+    }
+}
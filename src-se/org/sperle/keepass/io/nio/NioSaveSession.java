@@ -0,0 +1,91 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.io.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.sperle.keepass.io.SaveSession;
+
+/**
+ * Save session that writes into a temporary file channel. On commit the file is
+ * forced to disk and atomically replaces the target file.
+ */
+final class NioSaveSession implements SaveSession {
+    private final NioIOManager manager;
+    private final Path file;
+    private final Path tempFile;
+    private FileChannel channel;
+    private boolean committed = false;
+    
+    NioSaveSession(NioIOManager manager, Path file, Path tempFile, FileChannel channel) {
+        this.manager = manager;
+        this.file = file;
+        this.tempFile = tempFile;
+        this.channel = channel;
+    }
+    
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    public void overwrite(long position, byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+        if(position < 0 || position + length > channel.size()) {
+            throw new IllegalArgumentException("can only overwrite data that has been written");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position); // does not move the channel position
+        }
+    }
+    
+    public void commit() throws IOException {
+        checkOpen();
+        try {
+            channel.force(true);
+            channel.close();
+            channel = null;
+            manager.replace(tempFile, file);
+            committed = true;
+        } finally {
+            if(!committed) abort();
+        }
+    }
+    
+    public void abort() {
+        if(committed) return;
+        try {if(channel != null) channel.close();} catch (IOException e) {}
+        channel = null;
+        try {Files.deleteIfExists(tempFile);} catch (IOException e) {}
+    }
+    
+    private void checkOpen() {
+        if(channel == null) throw new IllegalStateException("save session already finished");
+    }
+}
@@ -121,6 +121,20 @@ public final class KeePassMobileIO {
         dbm.removeKeyFile(kdb);
     }
     
+    /**
+     * Calculates the number of key encryption rounds, that take the given time to unlock the
+     * database on this device (the more rounds, the harder is a brute force attack).
+     * @param kdb database to calibrate
+     * @param unlockTime the time in ms the key transformation should take (e.g. 1000)
+     * @param apply set to true, if the calibrated rounds should be used when the database is saved next time
+     * @return the calibrated number of key encryption rounds
+     * @throws KeePassCryptoException if the key transformation fails
+     * @throws KeePassDatabaseException if KeePass database is not supported
+     */
+    public int calibrateKeyEncRounds(KeePassDatabase kdb, int unlockTime, boolean apply) throws KeePassCryptoException, KeePassDatabaseException {
+        return dbm.calibrateKeyEncRounds(kdb, unlockTime, apply);
+    }
+    
     /**
      * Saves a KeePass database to a file.
      * @param kdb KeePass database to save
@@ -22,6 +22,7 @@ package org.sperle.keepass;
 
 import org.sperle.keepass.crypto.CryptoManager;
 import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.crypto.bc.AESKeyTransform;
 import org.sperle.keepass.crypto.bc.BcRandom;
 import org.sperle.keepass.crypto.bc.RC4Cipher;
 import org.sperle.keepass.crypto.bc.SHA256Hash;
@@ -85,6 +86,8 @@ public class KeePassMobileIOFactory {
     protected CryptoManager createCryptoManager(Random rand) {
 	CryptoManager cm = new CryptoManager(rand);
 	cm.addKdbCipher(new AESCipher());
+	cm.addKeyTransform(new AESKeyTransform(false));
+	cm.addKeyTransform(new AESKeyTransform(true)); // chosen by the crypto manager on multi core devices
 	cm.addPasswordCipher(new RC4Cipher());
 	cm.addHash(new SHA256Hash());
 	return cm;
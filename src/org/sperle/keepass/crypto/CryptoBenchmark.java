@@ -0,0 +1,157 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.crypto;
+
+import org.sperle.keepass.util.BinaryData;
+import org.sperle.keepass.util.ByteArrays;
+
+/**
+ * Known answer tests and throughput measurements of hash, cipher and key transformation
+ * implementations. Used by the crypto manager to choose between several implementations.
+ */
+final class CryptoBenchmark {
+    static final int TYPE_HASH = 0;
+    static final int TYPE_KDB_CIPHER = 1;
+    static final int TYPE_KEY_TRANSFORM = 2;
+    
+    // size of the work done in one benchmark run
+    private static final int DATA_LENGTH = 16 * 1024;
+    // size of the content decrypted in one benchmark run of a KDB cipher: big enough, that
+    // implementations decrypting large data in parallel do so (AESCipher from 2 x 64 KB)
+    private static final int DECRYPT_DATA_LENGTH = 256 * 1024;
+    private static final int KEY_TRANSFORM_ROUNDS = 1000;
+    
+    // SHA-256("abc") (FIPS 180-2)
+    private static final byte[] SHA256_MESSAGE = new byte[] {'a', 'b', 'c'};
+    private static final String SHA256_HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    // AES-256 (FIPS 197, appendix C.3)
+    private static final String AES_KEY = "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f";
+    private static final String AES_PLAIN = "00112233445566778899aabbccddeeff";
+    private static final String AES_CIPHER = "8ea2b7ca516745bfeafc49904b496089";
+    
+    private CryptoBenchmark() {
+    }
+    
+    /**
+     * Returns true, if the implementation calculates the known answers of its algorithm
+     * (always true for unknown algorithms).
+     */
+    static boolean passesKnownAnswerTest(Object implementation, int type) {
+        try {
+            switch (type) {
+            case TYPE_HASH:
+                Hash hash = (Hash)implementation;
+                if(!"SHA256".equals(hash.getName())) return true;
+                return ByteArrays.equals(BinaryData.fromHexString(SHA256_HASH), hash.getHash(new byte[][] {SHA256_MESSAGE}, null));
+            case TYPE_KDB_CIPHER:
+                KdbCipher cipher = (KdbCipher)implementation;
+                if(!"AES".equals(cipher.getName())) return true;
+                byte[] key = BinaryData.fromHexString(AES_KEY);
+                byte[] plain = BinaryData.fromHexString(AES_PLAIN);
+                byte[] expected = BinaryData.fromHexString(AES_CIPHER);
+                if(!ByteArrays.equals(expected, cipher.encrypt(key, plain, null, 1, false, null))) return false;
+                // CBC with zero IV: first block like ECB, second block is the padding
+                byte[] padded = cipher.encrypt(key, plain, new byte[16], 1, true, null);
+                return padded.length == 32 && ByteArrays.equals(expected, ByteArrays.cut(padded, 16))
+                        && ByteArrays.equals(plain, cipher.decrypt(key, padded, new byte[16], null));
+            case TYPE_KEY_TRANSFORM:
+                KeyTransform keyTransform = (KeyTransform)implementation;
+                if(!"AES".equals(keyTransform.getName())) return true;
+                byte[] twoBlocks = ByteArrays.append(BinaryData.fromHexString(AES_PLAIN), BinaryData.fromHexString(AES_PLAIN));
+                byte[] transformed = keyTransform.transform(BinaryData.fromHexString(AES_KEY), twoBlocks, 1, null);
+                return ByteArrays.equals(ByteArrays.append(BinaryData.fromHexString(AES_CIPHER), BinaryData.fromHexString(AES_CIPHER)), transformed);
+            default:
+                return false;
+            }
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Measures the throughput of the implementation for at least the given time: bytes per second
+     * for hashes and ciphers, rounds per second for key transformations.
+     */
+    static long measureThroughput(Object implementation, int type, int millis) throws KeePassCryptoException {
+        Workload workload;
+        switch (type) {
+        case TYPE_HASH:
+            final Hash hash = (Hash)implementation;
+            workload = new Workload(DATA_LENGTH) {
+                void run() {
+                    hash.getHash(new byte[][] {data}, null);
+                }
+            };
+            break;
+        case TYPE_KDB_CIPHER:
+            final KdbCipher cipher = (KdbCipher)implementation;
+            // decryption of the whole content is the hot path (load), encryption is measured as well (save)
+            final byte[] cipherText = cipher.encrypt(new byte[32], new byte[DECRYPT_DATA_LENGTH], new byte[16], 1, true, null);
+            workload = new Workload(DATA_LENGTH + DECRYPT_DATA_LENGTH) {
+                void run() throws KeePassCryptoException {
+                    cipher.encrypt(key, data, iv, 1, true, null);
+                    cipher.decrypt(key, cipherText, iv, null);
+                }
+            };
+            break;
+        case TYPE_KEY_TRANSFORM:
+            final KeyTransform keyTransform = (KeyTransform)implementation;
+            workload = new Workload(KEY_TRANSFORM_ROUNDS) {
+                void run() throws KeePassCryptoException {
+                    keyTransform.transform(key, masterKey, KEY_TRANSFORM_ROUNDS, null);
+                }
+            };
+            break;
+        default:
+            throw new IllegalArgumentException("unknown type");
+        }
+        
+        workload.run(); // warm up
+        int runs = 1;
+        while(true) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < runs; i++) {
+                workload.run();
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            if(elapsed >= millis) return workload.units * runs * 1000 / elapsed;
+            runs *= 2;
+        }
+    }
+    
+    /**
+     * The work done in one benchmark run.
+     */
+    private static abstract class Workload {
+        final byte[] data = new byte[DATA_LENGTH];
+        final byte[] key = new byte[32];
+        final byte[] iv = new byte[16];
+        final byte[] masterKey = new byte[32];
+        final long units;
+        
+        Workload(long units) {
+            this.units = units;
+        }
+        
+        abstract void run() throws KeePassCryptoException;
+    }
+}
@@ -21,6 +21,7 @@
 package org.sperle.keepass.crypto;
 
 import java.util.Hashtable;
+import java.util.Vector;
 
 import org.sperle.keepass.rand.Random;
 
@@ -28,45 +29,93 @@ import org.sperle.keepass.rand.Random;
  * The crypto manager manages the hash and cipher algorithms that are supported
  * by this KeePassIO distribution. Dev: CryptoManager works implementation
  * independent and therefore does not need an interface.
+ * 
+ * Several implementations of the same hash, KDB cipher or key transformation can
+ * be added. When one of them is requested for the first time, all implementations
+ * are checked with a known answer test and benchmarked, and the fastest correct
+ * one is used from then on.
  */
 public class CryptoManager {
-
+    /** Default time in ms every implementation is benchmarked. */
+    public static final int DEFAULT_BENCHMARK_TIME = 50;
+    
     private final Random rand;
     
+    // name -> Vector of implementations
     private Hashtable hashs = new Hashtable();
     private Hashtable kdbCiphers = new Hashtable();
+    private Hashtable keyTransforms = new Hashtable();
+    // name -> selected implementation
+    private Hashtable selectedHashs = new Hashtable();
+    private Hashtable selectedKdbCiphers = new Hashtable();
+    private Hashtable selectedKeyTransforms = new Hashtable();
+    // implementation -> measured throughput (Long)
+    private Hashtable throughputs = new Hashtable();
+    
     private Hashtable passwordCiphers = new Hashtable();
+    private int benchmarkTime = DEFAULT_BENCHMARK_TIME;
     
     public CryptoManager(Random rand) {
         this.rand = rand;
     }
     
+    /**
+     * Sets the time in ms every implementation is benchmarked, if there is more than one for an algorithm.
+     */
+    public void setBenchmarkTime(int benchmarkTime) {
+        this.benchmarkTime = benchmarkTime;
+    }
+    
     /**
      * Add a supported hash algorithm.
      */
-    public void addHash(Hash hash) {
-        hashs.put(hash.getName(), hash);
+    public synchronized void addHash(Hash hash) {
+        add(hashs, selectedHashs, hash.getName(), hash);
     }
 
     /**
-     * Returns a supported hash algorithm by name.
+     * Returns a supported hash algorithm by name (the fastest, if there is more than one).
      */
-    public Hash getHash(String name) {
-        return (Hash)hashs.get(name);
+    public synchronized Hash getHash(String name) {
+        return (Hash)select(hashs, selectedHashs, name, CryptoBenchmark.TYPE_HASH);
     }
 
     /**
      * Add a supported KeePassDB cipher algorithm.
      */
-    public void addKdbCipher(KdbCipher kdbCipher) {
-        kdbCiphers.put(kdbCipher.getName(), kdbCipher);
+    public synchronized void addKdbCipher(KdbCipher kdbCipher) {
+        add(kdbCiphers, selectedKdbCiphers, kdbCipher.getName(), kdbCipher);
     }
 
     /**
-     * Returns a supported KeePassDB cipher algorithm by name.
+     * Returns a supported KeePassDB cipher algorithm by name (the fastest, if there is more than one).
      */
-    public KdbCipher getKdbCipher(String name) {
-        return (KdbCipher)kdbCiphers.get(name);
+    public synchronized KdbCipher getKdbCipher(String name) {
+        return (KdbCipher)select(kdbCiphers, selectedKdbCiphers, name, CryptoBenchmark.TYPE_KDB_CIPHER);
+    }
+    
+    /**
+     * Add a supported key transformation.
+     */
+    public synchronized void addKeyTransform(KeyTransform keyTransform) {
+        add(keyTransforms, selectedKeyTransforms, keyTransform.getName(), keyTransform);
+    }
+    
+    /**
+     * Returns a supported key transformation by cipher name (the fastest, if there is more than one).
+     */
+    public synchronized KeyTransform getKeyTransform(String name) {
+        return (KeyTransform)select(keyTransforms, selectedKeyTransforms, name, CryptoBenchmark.TYPE_KEY_TRANSFORM);
+    }
+    
+    /**
+     * Returns the measured throughput of the given implementation: bytes per second for hashs and
+     * KDB ciphers, rounds per second for key transformations. Returns -1, if it was not benchmarked
+     * (only one implementation of its algorithm or not requested yet), 0 if it failed the known answer test.
+     */
+    public synchronized long getThroughput(Object implementation) {
+        Long throughput = (Long)throughputs.get(implementation);
+        return throughput != null ? throughput.longValue() : -1;
     }
     
     /**
@@ -86,4 +135,46 @@ public class CryptoManager {
         }
         return cipher;
     }
+    
+    private void add(Hashtable implementations, Hashtable selected, String name, Object implementation) {
+        Vector candidates = (Vector)implementations.get(name);
+        if(candidates == null) {
+            candidates = new Vector();
+            implementations.put(name, candidates);
+        }
+        candidates.addElement(implementation);
+        selected.remove(name); // select again on next request
+    }
+    
+    private Object select(Hashtable implementations, Hashtable selected, String name, int type) {
+        Object selection = selected.get(name);
+        if(selection != null) return selection;
+        
+        Vector candidates = (Vector)implementations.get(name);
+        if(candidates == null) return null;
+        if(candidates.size() == 1) { // nothing to choose
+            selection = candidates.elementAt(0);
+        } else {
+            long best = -1;
+            for (int i = 0; i < candidates.size(); i++) {
+                Object candidate = candidates.elementAt(i);
+                long throughput = 0;
+                if(CryptoBenchmark.passesKnownAnswerTest(candidate, type)) {
+                    try {
+                        throughput = CryptoBenchmark.measureThroughput(candidate, type, benchmarkTime);
+                    } catch (KeePassCryptoException e) {
+                        throughput = 0;
+                    }
+                    if(throughput > best) {
+                        best = throughput;
+                        selection = candidate;
+                    }
+                }
+                throughputs.put(candidate, new Long(throughput));
+            }
+            if(selection == null) return null; // no correct implementation
+        }
+        selected.put(name, selection);
+        return selection;
+    }
 }
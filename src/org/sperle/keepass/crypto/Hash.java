@@ -36,4 +36,9 @@ public interface Hash {
      * @param pm the progress monitor to monitor hashing process, can be null
      */
     byte[] getHash(byte[][] messages, ProgressMonitor pm);
+    
+    /**
+     * Starts a new session to calculate a hash incrementally.
+     */
+    HashSession startHash();
 }
@@ -0,0 +1,40 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.crypto;
+
+/**
+ * A hash session calculates a hash value incrementally, so the message does not
+ * have to be held in memory completely. A session can only be used once.
+ */
+public interface HashSession {
+    /**
+     * Adds a part of the message to the hash calculation.
+     * @param message the message part
+     * @param offset where the part starts inside the array
+     * @param length the length of the part
+     */
+    void update(byte[] message, int offset, int length);
+    
+    /**
+     * Finishes the hash calculation and returns the hash value.
+     */
+    byte[] doFinal();
+}
@@ -54,4 +54,38 @@ public interface KdbCipher {
      * @throws KeePassCryptoException if exception occurs during decryption
      */
     byte[] decrypt(byte[] key, byte[] cipherText, byte[] iv, ProgressMonitor pm) throws KeePassCryptoException;
+    
+    /**
+     * Decrypts a part of an array into a caller supplied buffer. The output may be the
+     * input array at the same offset, then the text is decrypted in place.
+     * @param key the key used for encryption
+     * @param cipherText array containing the encrypted text
+     * @param offset where the encrypted text starts
+     * @param length the length of the encrypted text
+     * @param iv
+     * @param out the output array, must have space for length bytes
+     * @param outOffset where the plain text should start
+     * @param pm the progress monitor to monitor decryption process, can be null
+     * @return the length of the plain text or -1, if user canceled
+     * @throws KeePassCryptoException if exception occurs during decryption
+     */
+    int decrypt(byte[] key, byte[] cipherText, int offset, int length, byte[] iv, byte[] out, int outOffset, ProgressMonitor pm) throws KeePassCryptoException;
+    
+    /**
+     * Starts a new session to decrypt encrypted text block by block (padded).
+     * @param key the key used for encryption
+     * @param iv
+     * @return the decryption session
+     * @throws KeePassCryptoException if the session could not be initialized
+     */
+    KdbCipherSession startDecryption(byte[] key, byte[] iv) throws KeePassCryptoException;
+    
+    /**
+     * Starts a new session to encrypt plain text block by block (padded).
+     * @param key the key used for encryption
+     * @param iv
+     * @return the encryption session
+     * @throws KeePassCryptoException if the session could not be initialized
+     */
+    KdbCipherSession startEncryption(byte[] key, byte[] iv) throws KeePassCryptoException;
 }
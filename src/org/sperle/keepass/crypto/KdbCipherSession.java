@@ -0,0 +1,55 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.crypto;
+
+/**
+ * A KeePassDB cipher session encrypts or decrypts a KeePassDB block by block,
+ * so neither the plain text nor the encrypted text has to be held in memory
+ * completely. A session can only be used once.
+ */
+public interface KdbCipherSession {
+    /**
+     * Returns the max. number of bytes the next call of update() will write
+     * into the output array, if it is called with the given input length.
+     */
+    int getUpdateOutputSize(int length);
+    
+    /**
+     * Processes the next part of the input.
+     * @param in input array
+     * @param inOffset where the input starts
+     * @param length the length of the input
+     * @param out the output array, must have space for getUpdateOutputSize(length) bytes
+     * @param outOffset where the output should start
+     * @return the number of bytes written into the output array
+     * @throws KeePassCryptoException if exception occurs during encryption/decryption
+     */
+    int update(byte[] in, int inOffset, int length, byte[] out, int outOffset) throws KeePassCryptoException;
+    
+    /**
+     * Processes the last block (padding) and finishes the session.
+     * @param out the output array, must have space for one more block
+     * @param outOffset where the output should start
+     * @return the number of bytes written into the output array
+     * @throws KeePassCryptoException if the padding is corrupt (e.g. wrong key)
+     */
+    int doFinal(byte[] out, int outOffset) throws KeePassCryptoException;
+}
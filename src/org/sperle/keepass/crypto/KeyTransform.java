@@ -0,0 +1,45 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.crypto;
+
+import org.sperle.keepass.monitor.ProgressMonitor;
+
+/**
+ * A key transform encrypts a key many rounds with a seed, to make brute force
+ * attacks on the master password expensive.
+ */
+public interface KeyTransform {
+    /**
+     * Returns the name of the cipher, that is used by the transformation.
+     */
+    String getName();
+    
+    /**
+     * Transforms the key.
+     * @param seed the key used for encryption
+     * @param key the key to transform (multiple of the cipher block size)
+     * @param rounds number of encryption rounds
+     * @param pm the progress monitor to monitor transformation process, can be null
+     * @return transformed key or null, if user canceled
+     * @throws KeePassCryptoException if exception occurs during encryption
+     */
+    byte[] transform(byte[] seed, byte[] key, int rounds, ProgressMonitor pm) throws KeePassCryptoException;
+}
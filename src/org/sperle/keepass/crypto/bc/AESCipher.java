@@ -27,15 +27,40 @@ import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.sperle.keepass.crypto.KdbCipher;
+import org.sperle.keepass.crypto.KdbCipherSession;
 import org.sperle.keepass.crypto.KeePassCryptoException;
 import org.sperle.keepass.monitor.ProgressMonitor;
 import org.sperle.keepass.util.ByteArrays;
 
 /**
  * The AES (Rijndael) cipher using bouncy castle to encrypt/decrypt the KeePassDB.
+ * Every CBC plain text block only depends on two cipher text blocks, so large
+ * cipher texts can be decrypted in parallel segments (see AESCipher(int)).
  */
 public final class AESCipher implements KdbCipher {
     public static final String NAME = "AES";
+    
+    private static final int BLOCK_SIZE = 16;
+    /** Min. length of a segment, that is decrypted in its own thread. */
+    static final int MIN_SEGMENT_LENGTH = 64 * 1024;
+    /** Number of blocks between two cancel checks of the segment threads. */
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+    
+    private final int numThreads;
+    
+    /**
+     * Creates a cipher, that decrypts in the calling thread only.
+     */
+    public AESCipher() {
+        this(1);
+    }
+    
+    /**
+     * @param numThreads max. number of threads used to decrypt large cipher texts (should be the number of cores)
+     */
+    public AESCipher(int numThreads) {
+        this.numThreads = numThreads < 1 ? 1 : numThreads;
+    }
 
     public String getName() {
 	return NAME;
@@ -86,18 +111,178 @@ public final class AESCipher implements KdbCipher {
     }
     
     public byte[] decrypt(byte[] key, byte[] cipherText, byte[] iv, ProgressMonitor pm) throws KeePassCryptoException {
+	byte[] plainText = new byte[cipherText.length];
+	int outLength = decrypt(key, cipherText, 0, cipherText.length, iv, plainText, 0, pm);
+	if(outLength == -1) return null; // user canceled
+	return (outLength < plainText.length) ? ByteArrays.cut(plainText, outLength) : plainText;
+    }
+    
+    public int decrypt(byte[] key, byte[] cipherText, int offset, int length, byte[] iv, byte[] out, int outOffset, ProgressMonitor pm) throws KeePassCryptoException {
+	int numSegments = Math.min(numThreads, length / MIN_SEGMENT_LENGTH);
+	if(numSegments > 1 && length % BLOCK_SIZE == 0) {
+	    return decryptParallel(key, cipherText, offset, length, iv, out, outOffset, numSegments, pm);
+	}
 	try {
+	    // CBC reads each block before it is overwritten, so decrypting in place is safe
 	    BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
 	    if(iv != null) cipher.init(false, new ParametersWithIV(new KeyParameter(key), iv));
 	    else cipher.init(false, new KeyParameter(key));
-	    if(pm != null) pm.nextStep(cipherText.length / cipher.getBlockSize(), "pm_decrypt");
-	    byte[] plainText = new byte[cipher.getOutputSize(cipherText.length)];
-	    int outLength = cipher.processBytes(cipherText, 0, cipherText.length, plainText, 0, pm);
-	    if(outLength == -1) return null; // user canceled
-	    outLength += cipher.doFinal(plainText, outLength);
-	    return (outLength < plainText.length) ? ByteArrays.cut(plainText, outLength) : plainText;
+	    if(pm != null) pm.nextStep(length / cipher.getBlockSize(), "pm_decrypt");
+	    int outLength = cipher.processBytes(cipherText, offset, length, out, outOffset, pm);
+	    if(outLength == -1) return -1; // user canceled
+	    return outLength + cipher.doFinal(out, outOffset + outLength);
 	} catch (Exception e) {
 	    throw new KeePassCryptoException("Exception during AES decryption: " + e.getMessage());
 	}
+    }
+    
+    /**
+     * Decrypts equally sized segments in parallel, the calling thread decrypts the first one and
+     * monitors the progress. The padding of the last block is validated after all segments are done.
+     */
+    private int decryptParallel(byte[] key, byte[] cipherText, int offset, int length, byte[] iv, 
+            byte[] out, int outOffset, int numSegments, ProgressMonitor pm) throws KeePassCryptoException {
+        int numBlocks = length / BLOCK_SIZE;
+        int segmentBlocks = numBlocks / numSegments;
+        if(pm != null) pm.nextStep(segmentBlocks, "pm_decrypt");
+        Segment[] segments = new Segment[numSegments];
+        boolean completed = false;
+        try {
+            for (int i = 0; i < numSegments; i++) {
+                int start = i * segmentBlocks * BLOCK_SIZE;
+                int end = (i == numSegments - 1) ? length : start + segmentBlocks * BLOCK_SIZE;
+                // chaining value of a segment is the last cipher text block before it, it has to be
+                // copied before any segment starts, because it might be overwritten (in place decryption)
+                byte[] chain = new byte[BLOCK_SIZE];
+                if(i > 0) System.arraycopy(cipherText, offset + start - BLOCK_SIZE, chain, 0, BLOCK_SIZE);
+                else if(iv != null) System.arraycopy(iv, 0, chain, 0, BLOCK_SIZE);
+                segments[i] = new Segment(key, chain, cipherText, offset + start, end - start, out, outOffset + start, i == 0 ? pm : null);
+            }
+            for (int i = 1; i < numSegments; i++) {
+                segments[i].start();
+            }
+            segments[0].run();
+            segments[0].rethrowError();
+            if(!segments[0].isCompleted()) return -1; // user canceled
+            for (int i = 1; i < numSegments; i++) {
+                segments[i].join();
+                segments[i].rethrowError();
+                if(!segments[i].isCompleted()) return -1;
+            }
+            
+            int padding = out[outOffset + length - 1] & 0xff; // PKCS#7, like PaddedBufferedBlockCipher
+            if(padding < 1 || padding > BLOCK_SIZE) {
+                throw new KeePassCryptoException("Exception during AES decryption: pad block corrupted");
+            }
+            for (int i = 2; i <= padding; i++) {
+                if(out[outOffset + length - i] != (byte)padding) {
+                    throw new KeePassCryptoException("Exception during AES decryption: pad block corrupted");
+                }
+            }
+            completed = true;
+            return length - padding;
+        } catch (InterruptedException e) {
+            return -1; // handled like a cancel
+        } catch (IllegalArgumentException e) { // e.g. invalid key or IV length
+            throw new KeePassCryptoException("Exception during AES decryption: " + e.getMessage());
+        } finally { // stop segments and delete all sensible data
+            for (int i = 0; i < numSegments && segments[i] != null; i++) {
+                if(!completed) segments[i].cancel();
+            }
+            for (int i = 0; i < numSegments && segments[i] != null; i++) {
+                try {
+                    if(segments[i].isAlive()) segments[i].join();
+                } catch (InterruptedException e) {}
+                ByteArrays.fillCompletelyWith(segments[i].chain, (byte)0);
+            }
+        }
+    }
+    
+    public KdbCipherSession startDecryption(byte[] key, byte[] iv) throws KeePassCryptoException {
+        try {
+            BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
+            if(iv != null) cipher.init(false, new ParametersWithIV(new KeyParameter(key), iv));
+            else cipher.init(false, new KeyParameter(key));
+            return new AESCipherSession(cipher);
+        } catch (Exception e) {
+            throw new KeePassCryptoException("Exception during AES decryption: " + e.getMessage());
+        }
+    }
+    
+    public KdbCipherSession startEncryption(byte[] key, byte[] iv) throws KeePassCryptoException {
+        try {
+            BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
+            if(iv != null) cipher.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+            else cipher.init(true, new KeyParameter(key));
+            return new AESCipherSession(cipher);
+        } catch (Exception e) {
+            throw new KeePassCryptoException("Exception during AES encryption: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Decrypts one segment of a CBC cipher text, may be done in place.
+     */
+    private static final class Segment extends Thread {
+        private final AESEngine engine;
+        private final byte[] chain;
+        private final byte[] next = new byte[BLOCK_SIZE];
+        private final byte[] in;
+        private final int inOffset;
+        private final int length;
+        private final byte[] out;
+        private final int outOffset;
+        private final ProgressMonitor pm;
+        private volatile boolean canceled = false;
+        private boolean completed = false;
+        private Throwable error;
+        
+        Segment(byte[] key, byte[] chain, byte[] in, int inOffset, int length, byte[] out, int outOffset, ProgressMonitor pm) {
+            this.engine = new AESEngine();
+            this.engine.init(false, new KeyParameter(key));
+            this.chain = chain;
+            this.in = in;
+            this.inOffset = inOffset;
+            this.length = length;
+            this.out = out;
+            this.outOffset = outOffset;
+            this.pm = pm;
+        }
+        
+        public void run() {
+            try {
+                for (int pos = 0, block = 1; pos < length; pos += BLOCK_SIZE, block++) {
+                    System.arraycopy(in, inOffset + pos, next, 0, BLOCK_SIZE); // before it is overwritten
+                    engine.processBlock(in, inOffset + pos, out, outOffset + pos);
+                    for (int i = 0; i < BLOCK_SIZE; i++) {
+                        out[outOffset + pos + i] ^= chain[i];
+                    }
+                    System.arraycopy(next, 0, chain, 0, BLOCK_SIZE);
+                    if(pm != null) {
+                        if(pm.isCanceled()) return;
+                        pm.tick();
+                    } else if(block % CANCEL_CHECK_INTERVAL == 0 && canceled) {
+                        return;
+                    }
+                }
+                completed = true;
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                ByteArrays.fillCompletelyWith(next, (byte)0);
+            }
+        }
+        
+        void cancel() {
+            canceled = true;
+        }
+        
+        boolean isCompleted() {
+            return completed;
+        }
+        
+        void rethrowError() throws KeePassCryptoException {
+            if(error != null) throw new KeePassCryptoException("Exception during AES decryption: " + error.getMessage());
+        }
     }
 }
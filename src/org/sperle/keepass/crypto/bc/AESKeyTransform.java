@@ -0,0 +1,179 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.crypto.bc;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.crypto.KeyTransform;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+/**
+ * The AES key transformation using bouncy castle. The key is encrypted in ECB
+ * mode, so its 16 byte blocks do not depend on each other and can be transformed
+ * in parallel lanes (one thread per block), like KeePass desktop does. The
+ * result is the same as AESCipher.encrypt(seed, key, null, rounds, false, pm).
+ * Every lane expands the key schedule once and encrypts its raw block in place,
+ * so the round loop does not allocate anything. The progress monitor is only
+ * asked every PROGRESS_INTERVAL rounds.
+ */
+public final class AESKeyTransform implements KeyTransform {
+    public static final String NAME = "AES";
+    
+    private static final int BLOCK_SIZE = 16;
+    /** Number of rounds between two progress ticks (and cancel checks). */
+    static final int PROGRESS_INTERVAL = 4096;
+    
+    private final boolean parallel;
+    
+    /**
+     * Creates a key transformation, that transforms the blocks one after another
+     * in the calling thread (no extra thread, faster on single core systems).
+     */
+    public AESKeyTransform() {
+        this(false);
+    }
+    
+    /**
+     * @param parallel if true, every block is transformed in its own thread (faster on multi core systems)
+     */
+    public AESKeyTransform(boolean parallel) {
+        this.parallel = parallel;
+    }
+    
+    public String getName() {
+        return NAME;
+    }
+    
+    public byte[] transform(byte[] seed, byte[] key, int rounds, ProgressMonitor pm) throws KeePassCryptoException {
+        if(key.length == 0 || key.length % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("key length must be a multiple of the AES block size");
+        }
+        if(rounds < 1) rounds = 1; // like AESCipher: first round is always processed
+        
+        int numLanes = key.length / BLOCK_SIZE;
+        if(pm != null) {
+            int ticks = (rounds + PROGRESS_INTERVAL - 1) / PROGRESS_INTERVAL;
+            pm.nextStep(parallel ? ticks : numLanes * ticks, "pm_encrypt");
+        }
+        Lane[] lanes = new Lane[numLanes];
+        boolean completed = false;
+        try {
+            for (int i = 0; i < numLanes; i++) {
+                // in parallel mode only the first lane (calling thread) monitors the progress
+                lanes[i] = new Lane(seed, key, i * BLOCK_SIZE, rounds, (parallel && i > 0) ? null : pm);
+            }
+            if(parallel) {
+                for (int i = 1; i < numLanes; i++) {
+                    lanes[i].start();
+                }
+                lanes[0].run();
+                lanes[0].rethrowError();
+                if(!lanes[0].isCompleted()) return null; // user canceled
+                for (int i = 1; i < numLanes; i++) {
+                    lanes[i].join();
+                }
+            } else {
+                for (int i = 0; i < numLanes; i++) {
+                    lanes[i].run();
+                }
+            }
+            
+            byte[] transformed = new byte[key.length];
+            for (int i = 0; i < numLanes; i++) {
+                lanes[i].rethrowError();
+                if(!lanes[i].isCompleted()) return null; // user canceled
+                System.arraycopy(lanes[i].block, 0, transformed, i * BLOCK_SIZE, BLOCK_SIZE);
+            }
+            completed = true;
+            return transformed;
+        } catch (InterruptedException e) {
+            return null; // handled like a cancel
+        } catch (IllegalArgumentException e) { // e.g. invalid seed length
+            throw new KeePassCryptoException("Exception during AES key transformation: " + e.getMessage());
+        } finally { // stop lanes and delete all sensible data
+            for (int i = 0; i < numLanes && lanes[i] != null; i++) {
+                if(!completed) lanes[i].cancel();
+            }
+            for (int i = 0; i < numLanes && lanes[i] != null; i++) {
+                try {
+                    if(lanes[i].isAlive()) lanes[i].join();
+                } catch (InterruptedException e) {}
+                ByteArrays.fillCompletelyWith(lanes[i].block, (byte)0);
+            }
+        }
+    }
+    
+    /**
+     * Transforms one block of the key.
+     */
+    private static final class Lane extends Thread {
+        private final AESEngine engine;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final int rounds;
+        private final ProgressMonitor pm;
+        private volatile boolean canceled = false;
+        private boolean completed = false;
+        private Throwable error;
+        
+        Lane(byte[] seed, byte[] key, int offset, int rounds, ProgressMonitor pm) {
+            this.engine = new AESEngine();
+            this.engine.init(true, new KeyParameter(seed)); // key schedule is expanded once
+            System.arraycopy(key, offset, block, 0, BLOCK_SIZE);
+            this.rounds = rounds;
+            this.pm = pm;
+        }
+        
+        public void run() {
+            try {
+                int remaining = rounds;
+                while(remaining > 0) {
+                    int n = remaining < PROGRESS_INTERVAL ? remaining : PROGRESS_INTERVAL;
+                    for (int i = 0; i < n; i++) {
+                        engine.processBlock(block, 0, block, 0);
+                    }
+                    remaining -= n;
+                    if(canceled) return;
+                    if(pm != null) {
+                        if(pm.isCanceled()) return;
+                        pm.tick();
+                    }
+                }
+                completed = true;
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+        
+        void cancel() {
+            canceled = true;
+        }
+        
+        boolean isCompleted() {
+            return completed;
+        }
+        
+        void rethrowError() throws KeePassCryptoException {
+            if(error != null) throw new KeePassCryptoException("Exception during AES key transformation: " + error.getMessage());
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.sperle.keepass.crypto.bc;
 
 import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.sperle.keepass.crypto.Hash;
+import org.sperle.keepass.crypto.HashSession;
 import org.sperle.keepass.monitor.ProgressMonitor;
 
 /**
@@ -47,6 +48,10 @@ public final class SHA256Hash implements Hash {
 	return hash;
     }
     
+    public HashSession startHash() {
+        return new SHA256HashSession();
+    }
+    
     private int sumLength(byte[][] messages) {
         int sum = 0;
         for (int i = 0; i < messages.length; i++) {
@@ -21,6 +21,7 @@
 package org.sperle.keepass.io;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.sperle.keepass.monitor.ProgressMonitor;
 
@@ -37,6 +38,17 @@ public interface IOManager {
      * @throws IOException if an IO error occurs
      */
     byte[] loadBinary(String filename, ProgressMonitor pm) throws IOException;
+    
+    /**
+     * Opens a binary file for reading. Use this instead of loadBinary(), if the
+     * file should be processed part by part without loading it completely into
+     * memory. The caller has to close the stream.
+     * 
+     * @param filename the path/name of the file
+     * @return stream to read the file content
+     * @throws IOException if an IO error occurs
+     */
+    InputStream openInputStream(String filename) throws IOException;
 
     /**
      * Saves a binary file. The save process should be implemented very
@@ -52,6 +64,16 @@ public interface IOManager {
      */
     void saveBinary(String filename, byte[] binary, ProgressMonitor pm) throws IOException;
     
+    /**
+     * Starts a session to save a binary file part by part (e.g. while the content is
+     * encrypted). The caller has to commit or abort the session.
+     * 
+     * @param filename the path/name of the file
+     * @return the save session
+     * @throws IOException if an IO error occurs
+     */
+    SaveSession startSave(String filename) throws IOException;
+    
     /**
      * Deletes the file with the specified name.
      * 
@@ -78,14 +100,4 @@ public interface IOManager {
      * Returns true if both files are binary equal.
      */
     boolean equals(String filename1, String filename2) throws IOException;
-
-    /**
-     * Generates a hash out of any file.
-     * 
-     * @param filename the path/name of the file
-     * @param hash hash algorithm to use
-     * @param packetSize size of the file package to use for calculation in bytes
-     * @return hash result
-     */
-    byte[] generateHash(String filename, int packetSize) throws IOException;
 }
@@ -0,0 +1,56 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.io;
+
+import java.io.IOException;
+
+/**
+ * A save session writes a binary file part by part, so the content does not have
+ * to be held in memory completely. The same defensive save process as in
+ * IOManager.saveBinary() is used: the original file is not replaced before
+ * commit() is called. A session can only be used once.
+ */
+public interface SaveSession {
+    /**
+     * Appends the given data to the file.
+     * @throws IOException if an IO error occurs
+     */
+    void write(byte[] data, int offset, int length) throws IOException;
+    
+    /**
+     * Overwrites data, that has already been written, at the given position of the
+     * file (e.g. a header that is known only after the rest of the file is written).
+     * @throws IOException if an IO error occurs
+     */
+    void overwrite(long position, byte[] data, int offset, int length) throws IOException;
+    
+    /**
+     * Finishes the file and replaces the original file with it.
+     * @throws IOException if an IO error occurs
+     */
+    void commit() throws IOException;
+    
+    /**
+     * Discards the written data and keeps the original file. Does nothing, if the
+     * session has already been committed.
+     */
+    void abort();
+}
@@ -0,0 +1,63 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.io.j2me;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.microedition.io.file.FileConnection;
+
+/**
+ * Input stream that closes the underlying file connection, when it is closed.
+ */
+final class FileConnectionInputStream extends InputStream {
+    private final FileConnection conn;
+    private final InputStream is;
+    
+    FileConnectionInputStream(FileConnection conn, InputStream is) {
+        this.conn = conn;
+        this.is = is;
+    }
+    
+    public int read() throws IOException {
+        return is.read();
+    }
+    
+    public int read(byte[] b, int off, int len) throws IOException {
+        return is.read(b, off, len);
+    }
+    
+    public long skip(long n) throws IOException {
+        return is.skip(n);
+    }
+    
+    public int available() throws IOException {
+        return is.available();
+    }
+    
+    public void close() throws IOException {
+        try {
+            is.close();
+        } finally {
+            conn.close();
+        }
+    }
+}
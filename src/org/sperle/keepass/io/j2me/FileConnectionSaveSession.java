@@ -0,0 +1,109 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.io.j2me;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.microedition.io.file.FileConnection;
+
+import org.sperle.keepass.io.SaveSession;
+
+/**
+ * Save session that writes into a file connection. If the target file already exists,
+ * a temporary file is written, that replaces the target file on commit.
+ */
+final class FileConnectionSaveSession implements SaveSession {
+    private final J2meIOManager manager;
+    private final String filename;
+    private final String tempFilename; // null, if target file is written directly
+    private FileConnection conn;
+    private OutputStream os;
+    private long length = 0;
+    
+    FileConnectionSaveSession(J2meIOManager manager, String filename, String tempFilename, FileConnection conn) {
+        this.manager = manager;
+        this.filename = filename;
+        this.tempFilename = tempFilename;
+        this.conn = conn;
+    }
+    
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+        if(os == null) os = conn.openOutputStream(this.length);
+        os.write(data, offset, length);
+        this.length += length;
+    }
+    
+    public void overwrite(long position, byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+        if(position < 0 || position + length > this.length) {
+            throw new IllegalArgumentException("can only overwrite data that has been written");
+        }
+        closeOutputStream();
+        os = conn.openOutputStream(position);
+        try {
+            os.write(data, offset, length);
+        } finally {
+            closeOutputStream(); // next write() continues at the end
+        }
+    }
+    
+    public void commit() throws IOException {
+        checkOpen();
+        boolean written = false;
+        try {
+            if(os != null) os.flush();
+            closeOutputStream(); // the last bytes may only be written on close
+            written = true;
+        } finally {
+            if(!written) abort();
+        }
+        close();
+        if(tempFilename != null) manager.replace(filename, tempFilename);
+    }
+    
+    public void abort() {
+        if(conn == null) return;
+        close();
+        try {
+            manager.delete(tempFilename != null ? tempFilename : filename);
+        } catch (IOException e) {}
+    }
+    
+    private void checkOpen() {
+        if(conn == null) throw new IllegalStateException("save session already finished");
+    }
+    
+    private void closeOutputStream() throws IOException {
+        if(os != null) {
+            OutputStream toClose = os;
+            os = null;
+            toClose.close();
+        }
+    }
+    
+    private void close() {
+        try {closeOutputStream();} catch (IOException e) {}
+        try {conn.close();} catch (IOException e) {}
+        conn = null;
+    }
+}
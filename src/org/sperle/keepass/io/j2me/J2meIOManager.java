@@ -27,8 +27,8 @@ import java.io.OutputStream;
 import javax.microedition.io.Connector;
 import javax.microedition.io.file.FileConnection;
 
-import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.sperle.keepass.io.IOManager;
+import org.sperle.keepass.io.SaveSession;
 import org.sperle.keepass.monitor.ProgressMonitor;
 import org.sperle.keepass.util.ByteArrays;
 
@@ -58,26 +58,44 @@ public class J2meIOManager implements IOManager {
     public byte[] loadBinary(String filename, ProgressMonitor pm) throws IOException {
         FileConnection conn = null;
         InputStream is = null;
-        byte[] file = new byte[0];
+        byte[] file = null;
+        boolean loaded = false;
         try {
             conn = (FileConnection) Connector.open(filename, Connector.READ);
-            if(pm != null) pm.nextStep(((int)(conn.fileSize() / 1024)) + 1, "pm_load");
+            file = new byte[(int)conn.fileSize()]; // read directly into the result, no copy needed
+            if(pm != null) pm.nextStep(file.length / 1024 + 1, "pm_load");
             is = conn.openInputStream();
-            byte[] buf = new byte[1024];
+            int offset = 0;
             int read = -1;
-            while((read = is.read(buf)) > -1) {
-                file = ByteArrays.append(file, buf, 0, read);
+            while(offset < file.length && (read = is.read(file, offset, Math.min(1024, file.length - offset))) > -1) {
+                offset += read;
                 if(pm != null) {
                     if(pm.isCanceled()) return null;
                     pm.tick();
                 }
             }
+            if(offset < file.length) {
+                throw new IOException("File [" + filename + "] is shorter than its size!");
+            }
+            loaded = true;
+            return file;
         } finally {
             try {if(is != null) is.close();} catch (IOException e) {}
             try {if(conn != null) conn.close();} catch (IOException e) {}
+            if(!loaded) ByteArrays.fillCompletelyWith(file, (byte)0);
+        }
+    }
+    
+    public InputStream openInputStream(String filename) throws IOException {
+        FileConnection conn = null;
+        try {
+            conn = (FileConnection) Connector.open(filename, Connector.READ);
+            InputStream is = new FileConnectionInputStream(conn, conn.openInputStream());
+            conn = null; // closed by stream
+            return is;
+        } finally {
+            try {if(conn != null) conn.close();} catch (IOException e) {}
         }
-        
-        return file;
     }
     
     public void saveBinary(String filename, byte[] binary, ProgressMonitor pm) throws IOException {
@@ -86,11 +104,33 @@ public class J2meIOManager implements IOManager {
         } else {
             String tempFilename = getTempFilename(filename);
             saveBinaryInternal(tempFilename, binary, pm);
-            delete(filename);
-            rename(getPath(filename), getFilename(tempFilename), getFilename(filename));
+            replace(filename, tempFilename);
         }
     }
     
+    public SaveSession startSave(String filename) throws IOException {
+        String tempFilename = exists(filename) ? getTempFilename(filename) : null;
+        FileConnection conn = null;
+        try {
+            conn = (FileConnection) Connector.open(tempFilename != null ? tempFilename : filename, Connector.READ_WRITE);
+            if(!conn.exists()) {
+                conn.create();
+            } else {
+                conn.truncate(0);
+            }
+            SaveSession session = new FileConnectionSaveSession(this, filename, tempFilename, conn);
+            conn = null; // closed by session
+            return session;
+        } finally {
+            try {if(conn != null) conn.close();} catch (IOException e) {}
+        }
+    }
+    
+    void replace(String filename, String tempFilename) throws IOException {
+        delete(filename);
+        rename(getPath(filename), getFilename(tempFilename), getFilename(filename));
+    }
+    
     private String getFilename(String filename) {
         int lastFolderDelim = filename.lastIndexOf('/');
         return filename.substring(lastFolderDelim + 1, filename.length());
@@ -125,7 +165,7 @@ public class J2meIOManager implements IOManager {
             } else {
                 conn.truncate(0);
             }
-            saveBinaryInternal(conn, binary, pm);
+            saveBinaryInternal(conn, binary, pm);
         } finally {
             try {if(conn != null) conn.close();} catch (IOException e) {}
         }
@@ -172,25 +212,4 @@ public class J2meIOManager implements IOManager {
         byte[] file2 = loadBinary(filename2, null);
         return ByteArrays.equals(file1, file2);
     }
-
-    public byte[] generateHash(String filename, int packetSize) throws IOException {
-        FileConnection conn = null;
-        byte[] hash = null;
-        try {
-            conn = (FileConnection) Connector.open(filename, Connector.READ);
-            InputStream is = conn.openInputStream();
-            byte[] buf = new byte[packetSize];
-            int read = -1;
-            SHA256Digest md = new SHA256Digest();
-            while((read = is.read(buf)) > -1) {
-                md.update(buf, 0, read, null);
-            }
-            hash = new byte[md.getDigestSize()];
-            md.doFinal(hash, 0);
-        } finally {
-            try {if(conn != null) conn.close();} catch (IOException e) {}
-        }
-        
-        return hash;
-    }
 }
@@ -154,11 +154,7 @@ public abstract class AbstractKeePassDatabase implements KeePassDatabase, KdbCha
     }
     
     public KdbGroup getParentGroup(KdbEntry entry) {
-        for(int i = 0; i < getGroups().size(); i++) {
-            KdbGroup parent = (KdbGroup) getGroups().elementAt(i);
-            if (parent.getId() == entry.getGroupId()) return parent;
-        }
-        return null;
+        return getGroup(entry.getGroupId());
     }
     
     public KdbGroup getGroup(int id) {
@@ -256,8 +252,9 @@ public abstract class AbstractKeePassDatabase implements KeePassDatabase, KdbCha
     protected abstract void backup(KdbEntry entry);
     
     protected KdbGroup getBackupGroup() {
-        for (int i = 0; i < getRootGroups().size(); i++) {
-            KdbGroup group = (KdbGroup) getRootGroups().elementAt(i);
+        Vector roots = getRootGroups();
+        for (int i = 0; i < roots.size(); i++) {
+            KdbGroup group = (KdbGroup) roots.elementAt(i);
             if(isBackupGroup(group)) return group;
         }
         return null;
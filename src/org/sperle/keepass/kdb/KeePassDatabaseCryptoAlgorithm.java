@@ -20,6 +20,7 @@
 
 package org.sperle.keepass.kdb;
 
+import org.sperle.keepass.crypto.KdbCipherSession;
 import org.sperle.keepass.crypto.KeePassCryptoException;
 import org.sperle.keepass.monitor.ProgressMonitor;
 
@@ -48,4 +49,28 @@ public interface KeePassDatabaseCryptoAlgorithm {
      */
     byte[] decrypt(byte[] encryptedContentData, byte[] masterSeed, byte[] masterSeed2, int numKeyEncRounds, 
 	    byte[] encryptionIV, byte[] masterPassword, byte[] keyFile, PerformanceStatistics ps, ProgressMonitor pm) throws KeePassCryptoException;
+    
+    /**
+     * Transforms the master password and/or key file with the given seed and number of rounds. This is the
+     * expensive part of the master key calculation, that only depends on masterSeed2 and numKeyEncRounds
+     * (returns null, if user canceled).
+     */
+    byte[] transformKey(byte[] masterSeed2, int numKeyEncRounds, byte[] masterPassword, byte[] keyFile, ProgressMonitor pm) throws KeePassCryptoException;
+    
+    /**
+     * Starts the block by block encryption of a KeePass database with an already transformed key.
+     */
+    KdbCipherSession startEncryption(byte[] masterSeed, byte[] transformedKey, byte[] encryptionIV) throws KeePassCryptoException;
+    
+    /**
+     * Decrypts the encrypted content of a KeePass database in place with an already transformed key,
+     * the plain content overwrites the encrypted one (returns its length or -1, if user canceled).
+     */
+    int decrypt(byte[] data, int offset, int length, byte[] masterSeed, byte[] transformedKey, byte[] encryptionIV, 
+            PerformanceStatistics ps, ProgressMonitor pm) throws KeePassCryptoException;
+    
+    /**
+     * Starts the block by block decryption of a KeePass database with an already transformed key.
+     */
+    KdbCipherSession startDecryption(byte[] masterSeed, byte[] transformedKey, byte[] encryptionIV) throws KeePassCryptoException;
 }
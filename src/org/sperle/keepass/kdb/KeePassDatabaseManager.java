@@ -113,6 +113,17 @@ public interface KeePassDatabaseManager {
      */
     void removeKeyFile(KeePassDatabase kdb) throws KeePassDatabaseException;
     
+    /**
+     * Measures the key transformation speed of the database's crypto algorithm on this device
+     * and returns the number of key encryption rounds that take the given time.
+     * @param kdb database to calibrate
+     * @param unlockTime the time in ms the key transformation should take
+     * @param apply set to true, if the calibrated rounds should be set (used on next save)
+     * @throws KeePassCryptoException if the key transformation fails
+     * @throws KeePassDatabaseException if KeePass database is not supported
+     */
+    int calibrateKeyEncRounds(KeePassDatabase kdb, int unlockTime, boolean apply) throws KeePassCryptoException, KeePassDatabaseException;
+    
     /**
      * Closes the KeePass database.
      * @param kdb KeePass database to close
@@ -0,0 +1,166 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.kdb.v1;
+
+import org.sperle.keepass.kdb.KeePassDatabaseException;
+import org.sperle.keepass.util.BinaryData;
+import org.sperle.keepass.util.ByteArrays;
+
+/**
+ * Extracts the groups and entries of a V1 database out of plain content data,
+ * that is passed in part by part (e.g. directly after decrypting a block). Only
+ * the group/entry that is not complete yet is buffered, so memory usage does
+ * not depend on the size of the database, but only on its biggest entry.
+ * <p>
+ * Corrupt content is not reported by update(), but held until checkComplete():
+ * with a wrong key the plain content is garbage, and this has to be reported as
+ * a decryption error after the padding and the content hash were checked.
+ */
+final class KdbContentExtractorV1 {
+    private static final int FIELDHEADER_SIZE = KdbGroupV1.FIELDTYPE_SIZE + KdbGroupV1.FIELDSIZE_SIZE;
+    
+    private final KeePassDatabaseV1 kdb;
+    private final int numGroups;
+    private final int numItems;
+    private final int maxContentLength;
+    
+    private int numExtracted = 0;
+    private byte[] buffer = new byte[0];
+    private int bufferLength = 0;
+    private KeePassDatabaseException error;
+    
+    /**
+     * @param kdb the database (header already extracted) to add the groups and entries to
+     * @param maxContentLength max. length of the plain content (used to detect corrupt field sizes)
+     */
+    KdbContentExtractorV1(KeePassDatabaseV1 kdb, int maxContentLength) {
+        this.kdb = kdb;
+        this.numGroups = kdb.getNumGroups();
+        this.numItems = kdb.getNumGroups() + kdb.getNumEntries();
+        this.maxContentLength = maxContentLength;
+    }
+    
+    /**
+     * Extracts all groups/entries that are complete after adding the given part
+     * of the plain content data.
+     */
+    void update(byte[] plainContentData, int offset, int length) {
+        if(length == 0 || isComplete() || error != null) return;
+        
+        try {
+            if(bufferLength == 0) { // nothing pending -> extract directly from given data
+                int extractedTo = extract(plainContentData, offset, offset + length);
+                append(plainContentData, extractedTo, offset + length - extractedTo);
+            } else {
+                append(plainContentData, offset, length);
+                int extractedTo = extract(buffer, 0, bufferLength);
+                System.arraycopy(buffer, extractedTo, buffer, 0, bufferLength - extractedTo);
+                ByteArrays.fillWith(buffer, bufferLength - extractedTo, extractedTo, (byte)0);
+                bufferLength -= extractedTo;
+            }
+        } catch (KeePassDatabaseException e) {
+            error = e;
+        }
+        if(isComplete() || error != null) release(); // ignore the rest of the data
+    }
+    
+    /**
+     * Returns true, if all groups and entries were extracted.
+     */
+    boolean isComplete() {
+        return numExtracted == numItems;
+    }
+    
+    /**
+     * Marks the extraction as failed because of an error outside of update()
+     * (e.g. in an extraction thread). The error is held back like a corrupt
+     * content and thrown by checkComplete().
+     */
+    void fail(Throwable t) {
+        if(error == null) {
+            error = t instanceof KeePassDatabaseException ? (KeePassDatabaseException)t 
+                    : new KeePassDatabaseException("Exception during content processing: " + t.getMessage());
+        }
+        release();
+    }
+    
+    /**
+     * Throws the error held back by update() or an exception, if the content
+     * ended before all groups and entries were extracted. Must only be called
+     * after the content hash was verified.
+     */
+    void checkComplete() throws KeePassDatabaseException {
+        if(error != null) throw error;
+        if(!isComplete()) {
+            throw new KeePassDatabaseException("kdb file invalid: content incomplete");
+        }
+    }
+    
+    /**
+     * Deletes the buffered plain content data.
+     */
+    void release() {
+        ByteArrays.fillCompletelyWith(buffer, (byte)0);
+        buffer = new byte[0];
+        bufferLength = 0;
+    }
+    
+    private int extract(byte[] data, int offset, int limit) throws KeePassDatabaseException {
+        while(!isComplete()) {
+            int end = getItemEnd(data, offset, limit);
+            if(end < 0) break; // item not complete yet
+            try {
+                if(numExtracted < numGroups) kdb.extractGroup(data, offset);
+                else kdb.extractEntry(data, offset);
+            } catch (RuntimeException e) {
+                throw new KeePassDatabaseException("kdb file invalid: corrupt content");
+            }
+            numExtracted++;
+            offset = end;
+        }
+        return offset;
+    }
+    
+    private int getItemEnd(byte[] data, int offset, int limit) throws KeePassDatabaseException {
+        while(offset + FIELDHEADER_SIZE <= limit) {
+            if(BinaryData.toUnsignedShort(data, offset) == KdbGroupV1.FIELDTYPE_TERMINATOR) {
+                return offset + FIELDHEADER_SIZE;
+            }
+            int fieldSize = BinaryData.toInt(data, offset + KdbGroupV1.FIELDTYPE_SIZE);
+            if(fieldSize < 0 || fieldSize > maxContentLength) {
+                throw new KeePassDatabaseException("kdb file invalid: corrupt field size");
+            }
+            offset += FIELDHEADER_SIZE + fieldSize;
+        }
+        return -1;
+    }
+    
+    private void append(byte[] data, int offset, int length) {
+        if(bufferLength + length > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(2 * buffer.length, bufferLength + length)];
+            System.arraycopy(buffer, 0, newBuffer, 0, bufferLength);
+            ByteArrays.fillCompletelyWith(buffer, (byte)0);
+            buffer = newBuffer;
+        }
+        System.arraycopy(data, offset, buffer, bufferLength, length);
+        bufferLength += length;
+    }
+}
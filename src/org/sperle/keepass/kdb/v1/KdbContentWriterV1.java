@@ -0,0 +1,130 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.kdb.v1;
+
+import java.io.IOException;
+
+import org.sperle.keepass.crypto.HashSession;
+import org.sperle.keepass.crypto.KdbCipherSession;
+import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.io.SaveSession;
+import org.sperle.keepass.util.ByteArrays;
+
+/**
+ * Serializes the groups and entries of a V1 database one after another into a
+ * block of plain content data. Every full block is hashed, encrypted and written
+ * into the save session, so memory usage does not depend on the size of the
+ * database, but only on the block size and its biggest entry.
+ */
+final class KdbContentWriterV1 {
+    // the cipher may output up to two blocks more than requested on allocation (buffered block, padding)
+    private static final int MAX_PADDING_SIZE = 32;
+    
+    private final HashSession hash;
+    private final KdbCipherSession cipher;
+    private final SaveSession out;
+    
+    private byte[] plainBlock;
+    private int plainBlockLength = 0;
+    private byte[] encryptedBlock;
+    private int plainContentLength = 0;
+    
+    /**
+     * @param hash session that calculates the content hash of the plain content
+     * @param cipher session that encrypts the plain content
+     * @param out where the encrypted content is written to
+     * @param blockSize size of the plain content blocks that are encrypted at once
+     */
+    KdbContentWriterV1(HashSession hash, KdbCipherSession cipher, SaveSession out, int blockSize) {
+        this.hash = hash;
+        this.cipher = cipher;
+        this.out = out;
+        allocateBlocks(blockSize);
+    }
+    
+    /**
+     * Serializes the given group.
+     */
+    void write(KdbGroupV1 group, boolean forTest) throws IOException, KeePassCryptoException {
+        int offset = reserve(group.getPlainContentLength(forTest));
+        plainBlockLength = group.writePlainContentData(plainBlock, offset, forTest);
+    }
+    
+    /**
+     * Serializes the given entry.
+     */
+    void write(KdbEntryV1 entry, boolean forTest) throws IOException, KeePassCryptoException {
+        int offset = reserve(entry.getPlainContentLength(forTest));
+        plainBlockLength = entry.writePlainContentData(plainBlock, offset, forTest);
+    }
+    
+    /**
+     * Writes the remaining data and the padding and returns the hash of the complete plain content.
+     */
+    byte[] finish() throws IOException, KeePassCryptoException {
+        flush();
+        out.write(encryptedBlock, 0, cipher.doFinal(encryptedBlock, 0));
+        return hash.doFinal();
+    }
+    
+    /**
+     * Returns the number of plain content bytes, that have been serialized.
+     */
+    int getPlainContentLength() {
+        return plainContentLength + plainBlockLength;
+    }
+    
+    /**
+     * Deletes the buffered plain and encrypted content data.
+     */
+    void release() {
+        ByteArrays.fillCompletelyWith(plainBlock, (byte)0);
+        ByteArrays.fillCompletelyWith(encryptedBlock, (byte)0);
+        plainBlockLength = 0;
+    }
+    
+    // makes room for the given number of bytes in the plain block and returns where they start
+    private int reserve(int length) throws IOException, KeePassCryptoException {
+        if(plainBlockLength + length > plainBlock.length) {
+            flush();
+            if(length > plainBlock.length) { // e.g. entry with big attachment
+                release();
+                allocateBlocks(length);
+            }
+        }
+        return plainBlockLength;
+    }
+    
+    private void flush() throws IOException, KeePassCryptoException {
+        if(plainBlockLength == 0) return;
+        hash.update(plainBlock, 0, plainBlockLength);
+        int encryptedLength = cipher.update(plainBlock, 0, plainBlockLength, encryptedBlock, 0);
+        out.write(encryptedBlock, 0, encryptedLength);
+        ByteArrays.fillWith(plainBlock, 0, plainBlockLength, (byte)0);
+        plainContentLength += plainBlockLength;
+        plainBlockLength = 0;
+    }
+    
+    private void allocateBlocks(int blockSize) {
+        plainBlock = new byte[blockSize];
+        encryptedBlock = new byte[cipher.getUpdateOutputSize(blockSize) + MAX_PADDING_SIZE];
+    }
+}
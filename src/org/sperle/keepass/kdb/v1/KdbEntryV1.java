@@ -58,6 +58,11 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
     protected static final int FIELDTYPE_SIZE = 2;
     protected static final int FIELDSIZE_SIZE = 4;
     
+    // values of the meta info entries (compared in binary form, when extracting lazily)
+    private static final byte[] META_INFO_TITLE = BinaryData.fromString("Meta-Info");
+    private static final byte[] META_INFO_USERNAME = BinaryData.fromString("SYSTEM");
+    private static final byte[] META_INFO_URL = BinaryData.fromString("$");
+    
     private byte id[]; // system
     private int groupId = -1; // system
     private int iconId = -1; // user
@@ -74,11 +79,19 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
     private String binaryDescription; // user
     private byte[] binaryData; // user
     private boolean internal; // computed
+    
+    private byte[] record; // lazy extraction: binary data of the fields that are not decoded yet
+    private int[] recordFieldOffsets; // lazy extraction: offset of every field type inside the record (-1: decoded)
+    
+    private transient byte[] serialized; // save: cache of the serialized fields without password and binary data
+    private transient int serializedPasswordOffset; // save: where the password field is inserted into the cache
     
     private transient Vector changeListeners = new Vector();
     
     private transient PasswordCipher passwordCipher;
     
+    private transient KeePassDatabaseV1 database; // indexes this entry by its group id
+    
     protected KdbEntryV1(PasswordCipher passwordCipher) {
         this.passwordCipher = passwordCipher;
     }
@@ -118,6 +131,85 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
 	return offset;
     }
     
+    // load: only decodes id, group id, icon id and the password (that must not stay in memory
+    // unencrypted), all other fields are decoded, when they are accessed for the first time
+    protected int extractLazy(byte[] plainContentData, int plainContentOffset) {
+        int offset = plainContentOffset;
+        while(getFieldType(plainContentData, offset) != FIELDTYPE_TERMINATOR) {
+            offset += getFieldSize(plainContentData, offset) + FIELDTYPE_SIZE + FIELDSIZE_SIZE;
+        }
+        offset += FIELDTYPE_SIZE + FIELDSIZE_SIZE;
+        
+        this.record = new byte[offset - plainContentOffset];
+        ByteArrays.fillCompletelyFrom(plainContentData, plainContentOffset, this.record);
+        this.recordFieldOffsets = new int[FIELDTYPE_BINARYDATA + 1];
+        for (int i = 0; i < recordFieldOffsets.length; i++) {
+            recordFieldOffsets[i] = -1;
+        }
+        int fieldOffset = 0;
+        while(getFieldType(record, fieldOffset) != FIELDTYPE_TERMINATOR) {
+            int fieldType = getFieldType(record, fieldOffset);
+            switch (fieldType) {
+            case FIELDTYPE_ID:
+            case FIELDTYPE_GROUPID:
+            case FIELDTYPE_ICONID:
+                extractField(record, fieldOffset);
+                break;
+            case FIELDTYPE_PASSWORD:
+                extractField(record, fieldOffset);
+                ByteArrays.fillWith(record, fieldOffset + FIELDTYPE_SIZE + FIELDSIZE_SIZE, getFieldSize(record, fieldOffset), (byte)0);
+                break;
+            default:
+                if(fieldType > FIELDTYPE_IGNORE && fieldType < recordFieldOffsets.length) recordFieldOffsets[fieldType] = fieldOffset;
+            }
+            fieldOffset += getFieldSize(record, fieldOffset) + FIELDTYPE_SIZE + FIELDSIZE_SIZE;
+        }
+        this.internal = isRecordField(FIELDTYPE_TITLE, META_INFO_TITLE) && isRecordField(FIELDTYPE_USERNAME, META_INFO_USERNAME) && 
+            isRecordField(FIELDTYPE_URL, META_INFO_URL) && Passwords.isEmpty(getPassword());
+        releaseRecordIfDecoded();
+        return offset;
+    }
+    
+    private boolean isRecordField(int fieldType, byte[] value) {
+        int offset = recordFieldOffsets[fieldType];
+        if(offset < 0 || getFieldSize(record, offset) != value.length) return false;
+        for (int i = 0; i < value.length; i++) {
+            if(record[offset + FIELDTYPE_SIZE + FIELDSIZE_SIZE + i] != value[i]) return false;
+        }
+        return true;
+    }
+    
+    private void decode(int fieldType) {
+        if(this.record == null || recordFieldOffsets[fieldType] < 0) return;
+        extractField(record, recordFieldOffsets[fieldType]);
+        recordFieldOffsets[fieldType] = -1;
+        releaseRecordIfDecoded();
+    }
+    
+    private void decodeAll() {
+        for (int fieldType = 0; this.record != null && fieldType < recordFieldOffsets.length; fieldType++) {
+            decode(fieldType);
+        }
+    }
+    
+    private void releaseRecordIfDecoded() {
+        for (int i = 0; i < recordFieldOffsets.length; i++) {
+            if(recordFieldOffsets[i] > -1) return;
+        }
+        releaseRecord();
+    }
+    
+    private void releaseRecord() {
+        ByteArrays.fillCompletelyWith(this.record, (byte)0);
+        this.record = null;
+        this.recordFieldOffsets = null;
+    }
+    
+    // for tests only
+    boolean isDecoded(int fieldType) {
+        return this.record == null || recordFieldOffsets[fieldType] < 0;
+    }
+    
     void setInternal() {
         this.internal = "Meta-Info".equals(this.title) && "SYSTEM".equals(this.username) && "$".equals(this.url) && Passwords.isEmpty(getPassword());        
     }
@@ -185,27 +277,131 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
 
     // save
     protected byte[] getPlainContentData(boolean forTest) {
-        byte[] plainContentData = new byte[0];
+        byte[] plainContentData = new byte[getPlainContentLength(forTest)];
+        writePlainContentData(plainContentData, 0, forTest);
+        return plainContentData;
+    }
+    
+    /**
+     * Returns the exact number of bytes, writePlainContentData() will write.
+     */
+    protected int getPlainContentLength(boolean forTest) {
         if(this.id == null) {
             throw new IllegalStateException("group id not set");
         }
-        plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromByteArray(FIELDTYPE_ID, this.id));
-        if(this.groupId != -1) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromInt(FIELDTYPE_GROUPID, this.groupId));
-        if(this.iconId != -1) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromInt(FIELDTYPE_ICONID, this.iconId));
-        if(this.title != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromString(FIELDTYPE_TITLE, this.title));
-        if(this.url != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromString(FIELDTYPE_URL, this.url));
-        if(this.username != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromString(FIELDTYPE_USERNAME, this.username));
-        if(getPassword() != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromPassword(FIELDTYPE_PASSWORD, getPassword()));
-        if(this.notes != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromString(FIELDTYPE_NOTES, this.notes));
-        if(this.creationTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_CREATIONTIME, this.creationTime));
-        if(!forTest && this.lastModificationTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_LASTMODIFICATIONTIME, this.lastModificationTime));
-        if(!forTest && this.lastAccessTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_LASTACCESSTIME, this.lastAccessTime));
-        if(this.expirationTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_EXPIRATIONTIME, this.expirationTime));
-        if(this.binaryDescription != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromString(FIELDTYPE_BINARYDESCRIPTION, this.binaryDescription));
-        if(this.binaryData != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromByteArray(FIELDTYPE_BINARYDATA, this.binaryData));
-        plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.entryTerminator());
-        
-        return plainContentData;
+        int length;
+        if(!forTest && this.serialized != null) {
+            length = this.serialized.length;
+        } else {
+            decodeAll();
+            length = getFieldsBeforePasswordLength() + getFieldsAfterPasswordLength(forTest);
+        }
+        int passwordLength = getPasswordLength();
+        if(passwordLength > -1) length += KeePassBinaryFields.FIELDHEADER_LENGTH + passwordLength + 1;
+        decode(FIELDTYPE_BINARYDATA);
+        if(this.binaryData != null) length += KeePassBinaryFields.FIELDHEADER_LENGTH + this.binaryData.length;
+        return length + KeePassBinaryFields.TERMINATOR_FIELD_LENGTH;
+    }
+    
+    /**
+     * Writes all fields directly into the given array and returns the offset behind them.
+     * The fields are serialized only once and copied from the cache on subsequent saves,
+     * as long as the entry does not change. The password (must not stay in memory
+     * unencrypted) and the attachment (would only be copied) are not cached.
+     */
+    protected int writePlainContentData(byte[] target, int offset, boolean forTest) {
+        if(this.id == null) {
+            throw new IllegalStateException("group id not set");
+        }
+        if(forTest) {
+            decodeAll();
+            offset = writeFieldsBeforePassword(target, offset);
+            offset = writePassword(target, offset);
+            offset = writeFieldsAfterPassword(target, offset, true);
+        } else {
+            if(this.serialized == null) {
+                decodeAll();
+                this.serialized = new byte[getFieldsBeforePasswordLength() + getFieldsAfterPasswordLength(false)];
+                this.serializedPasswordOffset = writeFieldsBeforePassword(this.serialized, 0);
+                writeFieldsAfterPassword(this.serialized, this.serializedPasswordOffset, false);
+            }
+            System.arraycopy(this.serialized, 0, target, offset, this.serializedPasswordOffset);
+            offset = writePassword(target, offset + this.serializedPasswordOffset);
+            int afterPasswordLength = this.serialized.length - this.serializedPasswordOffset;
+            System.arraycopy(this.serialized, this.serializedPasswordOffset, target, offset, afterPasswordLength);
+            offset += afterPasswordLength;
+        }
+        decode(FIELDTYPE_BINARYDATA);
+        if(this.binaryData != null) offset = KeePassBinaryFields.writeByteArray(FIELDTYPE_BINARYDATA, this.binaryData, target, offset);
+        return KeePassBinaryFields.writeTerminator(KeePassBinaryFields.ENTRY_TERMINATOR, target, offset);
+    }
+    
+    // for tests only
+    byte[] getSerialized() {
+        return this.serialized;
+    }
+    
+    private void invalidateSerialized() {
+        ByteArrays.fillCompletelyWith(this.serialized, (byte)0);
+        this.serialized = null;
+    }
+    
+    private int getFieldsBeforePasswordLength() {
+        int length = KeePassBinaryFields.FIELDHEADER_LENGTH + this.id.length;
+        if(this.groupId != -1) length += KeePassBinaryFields.INTEGER_FIELD_LENGTH;
+        if(this.iconId != -1) length += KeePassBinaryFields.INTEGER_FIELD_LENGTH;
+        if(this.title != null) length += KeePassBinaryFields.getStringFieldLength(this.title);
+        if(this.url != null) length += KeePassBinaryFields.getStringFieldLength(this.url);
+        if(this.username != null) length += KeePassBinaryFields.getStringFieldLength(this.username);
+        return length;
+    }
+    
+    // without binary data
+    private int getFieldsAfterPasswordLength(boolean forTest) {
+        int length = 0;
+        if(this.notes != null) length += KeePassBinaryFields.getStringFieldLength(this.notes);
+        if(this.creationTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(!forTest && this.lastModificationTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(!forTest && this.lastAccessTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(this.expirationTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(this.binaryDescription != null) length += KeePassBinaryFields.getStringFieldLength(this.binaryDescription);
+        return length;
+    }
+    
+    private int writeFieldsBeforePassword(byte[] target, int offset) {
+        offset = KeePassBinaryFields.writeByteArray(FIELDTYPE_ID, this.id, target, offset);
+        if(this.groupId != -1) offset = KeePassBinaryFields.writeInt(FIELDTYPE_GROUPID, this.groupId, target, offset);
+        if(this.iconId != -1) offset = KeePassBinaryFields.writeInt(FIELDTYPE_ICONID, this.iconId, target, offset);
+        if(this.title != null) offset = KeePassBinaryFields.writeString(FIELDTYPE_TITLE, this.title, target, offset);
+        if(this.url != null) offset = KeePassBinaryFields.writeString(FIELDTYPE_URL, this.url, target, offset);
+        if(this.username != null) offset = KeePassBinaryFields.writeString(FIELDTYPE_USERNAME, this.username, target, offset);
+        return offset;
+    }
+    
+    private int writePassword(byte[] target, int offset) {
+        byte[] password = getPassword();
+        if(password != null) {
+            offset = KeePassBinaryFields.writePassword(FIELDTYPE_PASSWORD, password, target, offset);
+            ByteArrays.fillCompletelyWith(password, (byte)0);
+        }
+        return offset;
+    }
+    
+    // without binary data
+    private int writeFieldsAfterPassword(byte[] target, int offset, boolean forTest) {
+        if(this.notes != null) offset = KeePassBinaryFields.writeString(FIELDTYPE_NOTES, this.notes, target, offset);
+        if(this.creationTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_CREATIONTIME, this.creationTime, target, offset);
+        if(!forTest && this.lastModificationTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_LASTMODIFICATIONTIME, this.lastModificationTime, target, offset);
+        if(!forTest && this.lastAccessTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_LASTACCESSTIME, this.lastAccessTime, target, offset);
+        if(this.expirationTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_EXPIRATIONTIME, this.expirationTime, target, offset);
+        if(this.binaryDescription != null) offset = KeePassBinaryFields.writeString(FIELDTYPE_BINARYDESCRIPTION, this.binaryDescription, target, offset);
+        return offset;
+    }
+    
+    // same decision as in getPassword(), but without decrypting (RC4 keeps the length)
+    private int getPasswordLength() {
+        byte[] password = usePasswordEncryption() && !Passwords.isEmpty(this.passwordPlain) ? this.passwordEncrypted : this.passwordPlain;
+        return password != null ? password.length : -1;
     }
     
     public int hashCode() {
@@ -230,6 +426,7 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
 
     // only used for tests!
     protected void setId(byte[] id) {
+        invalidateSerialized();
         this.id = id;
     }
     
@@ -239,9 +436,15 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
 
     public void setGroupId(int groupId) {
         beforeChange();
+        int oldGroupId = this.groupId;
 	this.groupId = groupId;
+	if(database != null) database.groupIdChanged(this, oldGroupId);
 	afterChange();
     }
+    
+    void setDatabase(KeePassDatabaseV1 database) {
+        this.database = database;
+    }
 
     public int getGroupId() {
 	return this.groupId;
@@ -258,32 +461,38 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
     }
 
     public void setTitle(String title) {
+        decode(FIELDTYPE_TITLE);
         beforeChange();
 	this.title = title;
 	afterChange();
     }
 
     public String getTitle() {
+        decode(FIELDTYPE_TITLE);
 	return this.title;
     }
 
     public void setUrl(String url) {
+        decode(FIELDTYPE_URL);
         beforeChange();
 	this.url = url;
 	afterChange();
     }
 
     public String getUrl() {
+        decode(FIELDTYPE_URL);
 	return this.url;
     }
 
     public void setUsername(String username) {
+        decode(FIELDTYPE_USERNAME);
         beforeChange();
 	this.username = username;
 	afterChange();
     }
 
     public String getUsername() {
+        decode(FIELDTYPE_USERNAME);
 	return this.username;
     }
 
@@ -321,50 +530,63 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
     }
     
     public void setNotes(String notes) {
+        decode(FIELDTYPE_NOTES);
         beforeChange();
 	this.notes = notes;
 	afterChange();
     }
 
     public String getNotes() {
+        decode(FIELDTYPE_NOTES);
 	return this.notes;
     }
 
     public KdbDate getCreationTime() {
+        decode(FIELDTYPE_CREATIONTIME);
 	return this.creationTime;
     }
 
     public KdbDate getLastModificationTime() {
+        decode(FIELDTYPE_LASTMODIFICATIONTIME);
 	return this.lastModificationTime;
     }
 
     public KdbDate getLastAccessTime() {
+        decode(FIELDTYPE_LASTACCESSTIME);
 	return this.lastAccessTime;
     }
 
     public void access() {
+        decode(FIELDTYPE_LASTACCESSTIME);
+        invalidateSerialized();
         this.lastAccessTime = KdbDate.now();
     }
     
     public void setExpirationTime(KdbDate expirationTime) {
+        decode(FIELDTYPE_EXPIRATIONTIME);
         beforeChange();
 	this.expirationTime = expirationTime;
 	afterChange();
     }
 
     public KdbDate getExpirationTime() {
+        decode(FIELDTYPE_EXPIRATIONTIME);
 	return this.expirationTime;
     }
     
     public String getBinaryDescription() {
+        decode(FIELDTYPE_BINARYDESCRIPTION);
 	return this.binaryDescription;
     }
     
     public byte[] getBinaryData() {
+        decode(FIELDTYPE_BINARYDATA);
         return this.binaryData;
     }
     
     public void addAttachment(String binaryDescription, byte[] binaryData) {
+        decode(FIELDTYPE_BINARYDESCRIPTION);
+        decode(FIELDTYPE_BINARYDATA);
         beforeChange();
         this.binaryDescription = binaryDescription;
         this.binaryData = binaryData;
@@ -372,10 +594,13 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
     }
     
     public boolean hasAttachment() {
+        decode(FIELDTYPE_BINARYDATA);
         return this.binaryData != null && this.binaryData.length > 0;
     }
     
     public void removeAttachment() {
+        decode(FIELDTYPE_BINARYDESCRIPTION);
+        decode(FIELDTYPE_BINARYDATA);
         beforeChange();
         this.binaryDescription = null;
         this.binaryData = null;
@@ -383,14 +608,17 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
     }
     
     public boolean expired() {
+        decode(FIELDTYPE_EXPIRATIONTIME);
         return this.expirationTime != null && !this.expirationTime.equals(KdbDate.NEVER_EXPIRES) && this.expirationTime.before(KdbDate.now());
     }
     
     private void beforeChange() {
+        invalidateSerialized();
         this.fireBeforeChange();
     }
     
     private void afterChange() {
+        decode(FIELDTYPE_LASTMODIFICATIONTIME);
         this.lastModificationTime = KdbDate.now();
         this.fireAfterChange();
     }
@@ -424,11 +652,16 @@ public class KdbEntryV1 implements KdbEntry, org.sperle.keepass.util.Comparable
     }
 
     public void close() {
+        invalidateSerialized();
+        if(this.record != null) releaseRecord();
         ByteArrays.fillCompletelyWith(this.passwordPlain, (byte)0);
         ByteArrays.fillCompletelyWith(this.passwordEncrypted, (byte)0);
     }
     
     protected void copyValuesFrom(KdbEntryV1 entry) {
+        invalidateSerialized();
+        entry.decodeAll();
+        decodeAll();
         this.iconId = entry.iconId;
         this.title = entry.title;
         this.url = entry.url;
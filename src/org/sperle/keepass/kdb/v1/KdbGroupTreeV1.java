@@ -0,0 +1,178 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.kdb.v1;
+
+import java.util.Vector;
+
+import org.sperle.keepass.kdb.KdbGroup;
+import org.sperle.keepass.util.IntHashtable;
+
+/**
+ * Explicit index of the group tree, that a KeePassDB only stores implicitly in
+ * the order of its groups (pre-order) and their tree levels. Every group knows
+ * its parent, its ordered child groups and its root group, so navigating the
+ * tree does not scan the group list. A group is a child of the nearest
+ * preceding group with a lower tree level, if that group is exactly one level
+ * above (like the former scans, groups with a level gap have no parent).
+ */
+final class KdbGroupTreeV1 {
+    private final IntHashtable nodes = new IntHashtable(); // group id -> node
+    private final Vector roots = new Vector();
+    private final Vector duplicates = new Vector(0); // nodes of groups reusing an indexed id, in file order
+    
+    /**
+     * Adds a group, that is appended behind the given previous group (file order).
+     */
+    void append(KdbGroup group, KdbGroup previous) {
+        Node enclosing = previous == null ? null : getNode(previous);
+        while(enclosing != null && enclosing.group.getTreeLevel() >= group.getTreeLevel()) {
+            enclosing = enclosing.enclosing;
+        }
+        add(group, enclosing);
+    }
+    
+    /**
+     * Adds a group as last child of the given parent.
+     */
+    void insert(KdbGroup group, KdbGroup parent) {
+        add(group, getNode(parent));
+    }
+    
+    private void add(KdbGroup group, Node enclosing) {
+        Node node = new Node(group, enclosing);
+        if(nodes.get(group.getId()) == null) nodes.put(group.getId(), node);
+        else duplicates.addElement(node); // like the former scans, the first group of an id wins
+        if(node.parent != null) node.parent.addChild(group);
+        else if(group.isRoot()) roots.addElement(group);
+    }
+    
+    void remove(KdbGroup group) {
+        Node node = getNode(group);
+        if(node == null) return;
+        if(!duplicates.removeElement(node)) {
+            nodes.remove(group.getId());
+            for (int i = 0; i < duplicates.size(); i++) {
+                Node duplicate = (Node) duplicates.elementAt(i);
+                if(duplicate.group.getId() == group.getId()) {
+                    duplicates.removeElementAt(i);
+                    nodes.put(group.getId(), duplicate);
+                    break;
+                }
+            }
+        }
+        if(node.parent != null) removeSame(node.parent.children, group);
+        else removeSame(roots, group);
+    }
+    
+    void clear() {
+        nodes.clear();
+        duplicates.removeAllElements();
+        roots.removeAllElements();
+    }
+    
+    KdbGroup getGroup(int id) {
+        Node node = (Node) nodes.get(id);
+        return node == null ? null : node.group;
+    }
+    
+    /**
+     * Returns the root group of the subtree the group belongs to (groups without parent are their own root).
+     */
+    KdbGroup getRoot(KdbGroup group) {
+        Node node = getNode(group);
+        return node == null ? null : node.root.group;
+    }
+    
+    KdbGroup getParent(KdbGroup group) {
+        Node node = getNode(group);
+        return (node == null || node.parent == null) ? null : node.parent.group;
+    }
+    
+    Vector getChildren(KdbGroup group) {
+        Node node = getNode(group);
+        return copy(node == null ? null : node.children);
+    }
+    
+    Vector getRoots() {
+        return copy(roots);
+    }
+    
+    /**
+     * Returns the last group of the subtree of the given group in file order (the group itself, if it has no children).
+     */
+    KdbGroup getLastDescendant(KdbGroup group) {
+        Node node = getNode(group);
+        while(node.children != null && node.children.size() > 0) {
+            node = getNode((KdbGroup) node.children.lastElement());
+        }
+        return node.group;
+    }
+    
+    private Node getNode(KdbGroup group) {
+        Node node = (Node) nodes.get(group.getId());
+        if(node == null || node.group == group) return node;
+        for (int i = 0; i < duplicates.size(); i++) {
+            Node duplicate = (Node) duplicates.elementAt(i);
+            if(duplicate.group == group) return duplicate;
+        }
+        return node;
+    }
+    
+    // groups are equal by id, so duplicates must be removed by identity
+    private static void removeSame(Vector groups, KdbGroup group) {
+        for (int i = 0; i < groups.size(); i++) {
+            if(groups.elementAt(i) == group) {
+                groups.removeElementAt(i);
+                return;
+            }
+        }
+    }
+    
+    private static Vector copy(Vector groups) {
+        if(groups == null) return new Vector(0);
+        Vector copy = new Vector(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            copy.addElement(groups.elementAt(i));
+        }
+        return copy;
+    }
+    
+    private static final class Node {
+        final KdbGroup group;
+        final Node enclosing; // nearest preceding group with a lower tree level
+        final Node parent;
+        final Node root;
+        Vector children; // created with the first child
+        
+        Node(KdbGroup group, Node enclosing) {
+            this.group = group;
+            this.enclosing = enclosing;
+            this.parent = (enclosing != null && enclosing.group.getTreeLevel() == group.getTreeLevel() - 1) ? enclosing : null;
+            this.root = parent != null ? parent.root : this;
+        }
+        
+        void addChild(KdbGroup child) {
+            if(children == null) children = new Vector(4);
+            children.addElement(child);
+        }
+    }
+}
@@ -28,7 +28,6 @@ import org.sperle.keepass.kdb.KdbDate;
 import org.sperle.keepass.kdb.KdbGroup;
 import org.sperle.keepass.kdb.KeePassDatabase;
 import org.sperle.keepass.util.BinaryData;
-import org.sperle.keepass.util.ByteArrays;
 import org.sperle.keepass.util.KeePassBinaryFields;
 
 /**
@@ -60,6 +59,8 @@ public class KdbGroupV1 implements KdbGroup, org.sperle.keepass.util.Comparable
     private int treeLevel = -1;  // system
     private int internalFlags = -1; // system
     
+    private transient byte[] serialized; // cache of the plain content data (save), invalidated on every change
+    
     private transient Vector changeListeners = new Vector();
     
     // for loading and testing
@@ -135,22 +136,73 @@ public class KdbGroupV1 implements KdbGroup, org.sperle.keepass.util.Comparable
     }
     
     protected byte[] getPlainContentData(boolean forTest) {
-        byte[] plainContentData = new byte[0];
+        byte[] plainContentData = new byte[getPlainContentLength(forTest)];
+        writePlainContentData(plainContentData, 0, forTest);
+        return plainContentData;
+    }
+    
+    /**
+     * Returns the exact number of bytes, writePlainContentData() will write.
+     */
+    protected int getPlainContentLength(boolean forTest) {
         if(this.id == -1) {
             throw new IllegalStateException("group id not set");
         }
-        plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromInt(FIELDTYPE_ID, this.id));
-        if(this.name != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromString(FIELDTYPE_NAME, this.name));
-        if(this.creationTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_CREATIONTIME, this.creationTime));
-        if(!forTest && this.lastModificationTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_LASTMODIFICATIONTIME, this.lastModificationTime));
-        if(!forTest && this.lastAccessTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_LASTACCESSTIME, this.lastAccessTime));
-        if(this.expirationTime != null) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromDate(FIELDTYPE_EXPIRATIONTIME, this.expirationTime));
-        if(this.iconId != -1) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromInt(FIELDTYPE_ICONID, this.iconId));
-        if(this.treeLevel != -1) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromUnsignedShort(FIELDTYPE_TREELEVEL, this.treeLevel));
-        if(this.internalFlags != -1) plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.fromInt(FIELDTYPE_INTERNALFLAGS, this.internalFlags));
-        plainContentData = ByteArrays.append(plainContentData, KeePassBinaryFields.groupTerminator());
-        
-        return plainContentData;
+        if(!forTest && this.serialized != null) return this.serialized.length;
+        return calculatePlainContentLength(forTest);
+    }
+    
+    /**
+     * Writes all fields directly into the given array and returns the offset behind them.
+     * The fields are serialized only once and copied from the cache on subsequent saves,
+     * as long as the group does not change.
+     */
+    protected int writePlainContentData(byte[] target, int offset, boolean forTest) {
+        if(this.id == -1) {
+            throw new IllegalStateException("group id not set");
+        }
+        if(forTest) return serialize(target, offset, true);
+        if(this.serialized == null) {
+            this.serialized = new byte[calculatePlainContentLength(false)];
+            serialize(this.serialized, 0, false);
+        }
+        System.arraycopy(this.serialized, 0, target, offset, this.serialized.length);
+        return offset + this.serialized.length;
+    }
+    
+    // for tests only
+    byte[] getSerialized() {
+        return this.serialized;
+    }
+    
+    private void invalidateSerialized() {
+        this.serialized = null;
+    }
+    
+    private int calculatePlainContentLength(boolean forTest) {
+        int length = KeePassBinaryFields.INTEGER_FIELD_LENGTH; // id
+        if(this.name != null) length += KeePassBinaryFields.getStringFieldLength(this.name);
+        if(this.creationTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(!forTest && this.lastModificationTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(!forTest && this.lastAccessTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(this.expirationTime != null) length += KeePassBinaryFields.DATE_FIELD_LENGTH;
+        if(this.iconId != -1) length += KeePassBinaryFields.INTEGER_FIELD_LENGTH;
+        if(this.treeLevel != -1) length += KeePassBinaryFields.UNSIGNED_SHORT_FIELD_LENGTH;
+        if(this.internalFlags != -1) length += KeePassBinaryFields.INTEGER_FIELD_LENGTH;
+        return length + KeePassBinaryFields.TERMINATOR_FIELD_LENGTH;
+    }
+    
+    private int serialize(byte[] target, int offset, boolean forTest) {
+        offset = KeePassBinaryFields.writeInt(FIELDTYPE_ID, this.id, target, offset);
+        if(this.name != null) offset = KeePassBinaryFields.writeString(FIELDTYPE_NAME, this.name, target, offset);
+        if(this.creationTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_CREATIONTIME, this.creationTime, target, offset);
+        if(!forTest && this.lastModificationTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_LASTMODIFICATIONTIME, this.lastModificationTime, target, offset);
+        if(!forTest && this.lastAccessTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_LASTACCESSTIME, this.lastAccessTime, target, offset);
+        if(this.expirationTime != null) offset = KeePassBinaryFields.writeDate(FIELDTYPE_EXPIRATIONTIME, this.expirationTime, target, offset);
+        if(this.iconId != -1) offset = KeePassBinaryFields.writeInt(FIELDTYPE_ICONID, this.iconId, target, offset);
+        if(this.treeLevel != -1) offset = KeePassBinaryFields.writeUnsignedShort(FIELDTYPE_TREELEVEL, this.treeLevel, target, offset);
+        if(this.internalFlags != -1) offset = KeePassBinaryFields.writeInt(FIELDTYPE_INTERNALFLAGS, this.internalFlags, target, offset);
+        return KeePassBinaryFields.writeTerminator(KeePassBinaryFields.GROUP_TERMINATOR, target, offset);
     }
     
     public int hashCode() {
@@ -175,6 +227,7 @@ public class KdbGroupV1 implements KdbGroup, org.sperle.keepass.util.Comparable
 
     // only used in tests!
     protected void setId(int id) {
+        invalidateSerialized();
 	this.id = id;
     }
 
@@ -205,6 +258,7 @@ public class KdbGroupV1 implements KdbGroup, org.sperle.keepass.util.Comparable
     }
     
     public void access() {
+        invalidateSerialized();
         this.lastAccessTime = KdbDate.now();
     }
     
@@ -249,6 +303,7 @@ public class KdbGroupV1 implements KdbGroup, org.sperle.keepass.util.Comparable
     }
     
     private void beforeChange() {
+        invalidateSerialized();
         this.fireBeforeChange();
     }
     
@@ -274,6 +329,7 @@ public class KdbGroupV1 implements KdbGroup, org.sperle.keepass.util.Comparable
     }
 
     public void close() {
+        invalidateSerialized();
     }
     
     private void fireBeforeChange() {
@@ -23,11 +23,14 @@ package org.sperle.keepass.kdb.v1;
 import org.sperle.keepass.crypto.CryptoManager;
 import org.sperle.keepass.crypto.Hash;
 import org.sperle.keepass.crypto.KdbCipher;
+import org.sperle.keepass.crypto.KdbCipherSession;
 import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.crypto.KeyTransform;
 import org.sperle.keepass.kdb.KeePassDatabase;
 import org.sperle.keepass.kdb.KeePassDatabaseCryptoAlgorithm;
 import org.sperle.keepass.kdb.PerformanceStatistics;
 import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
 
 /**
  * This crypto algorithm knows how to encrypt/decrypt V1 databases with AES
@@ -37,10 +40,12 @@ public class KeePassDatabaseAESCryptoAlgorithmV1 implements KeePassDatabaseCrypt
 
     private Hash sha256;
     private KdbCipher aes;
+    private KeyTransform aesKeyTransform; // optional
 
     public KeePassDatabaseAESCryptoAlgorithmV1(CryptoManager cryptoManager) {
         sha256 = cryptoManager.getHash("SHA256");
         aes = cryptoManager.getKdbCipher("AES");
+        aesKeyTransform = cryptoManager.getKeyTransform("AES");
 
         if (sha256 == null || aes == null) {
             throw new IllegalStateException("SHA-256/AES not supported");
@@ -62,36 +67,83 @@ public class KeePassDatabaseAESCryptoAlgorithmV1 implements KeePassDatabaseCrypt
 
     public byte[] decrypt(byte[] encryptedContentData, byte[] masterSeed, byte[] masterSeed2, int numKeyEncRounds,
             byte[] encryptionIV, byte[] masterPassword, byte[] keyFile, PerformanceStatistics ps, ProgressMonitor pm) throws KeePassCryptoException {
-        if (masterPassword == null && keyFile == null) {
-            throw new IllegalArgumentException("master password and key file null");
-        }
-        
-        byte[] passwordKey = getPasswordKey(masterPassword, keyFile);
-        
         long start = System.currentTimeMillis();
-        byte[] masterKey = encryptMasterKey(masterSeed, masterSeed2, numKeyEncRounds, passwordKey, pm);
-        if (masterKey == null) return null; // user canceled
+        byte[] transformedKey = transformKey(masterSeed2, numKeyEncRounds, masterPassword, keyFile, pm);
+        if (transformedKey == null) return null; // user canceled
         ps.setMasterKeyEncryptionTime(System.currentTimeMillis() - start);
         
-        start = System.currentTimeMillis();
-        byte[] decrypted = aes.decrypt(masterKey, encryptedContentData, encryptionIV, pm);
-        ps.setDecryptionTime(System.currentTimeMillis() - start);
-        
-        return decrypted;
+        byte[] masterKey = getMasterKey(masterSeed, transformedKey);
+        try {
+            start = System.currentTimeMillis();
+            byte[] decrypted = aes.decrypt(masterKey, encryptedContentData, encryptionIV, pm);
+            ps.setDecryptionTime(System.currentTimeMillis() - start);
+            return decrypted;
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(transformedKey, (byte)0);
+            ByteArrays.fillCompletelyWith(masterKey, (byte)0);
+        }
+    }
+
+    public int decrypt(byte[] data, int offset, int length, byte[] masterSeed, byte[] transformedKey, byte[] encryptionIV, 
+            PerformanceStatistics ps, ProgressMonitor pm) throws KeePassCryptoException {
+        byte[] masterKey = getMasterKey(masterSeed, transformedKey);
+        try {
+            long start = System.currentTimeMillis();
+            int plainLength = aes.decrypt(masterKey, data, offset, length, encryptionIV, data, offset, pm);
+            ps.setDecryptionTime(System.currentTimeMillis() - start);
+            return plainLength;
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(masterKey, (byte)0);
+        }
+    }
+
+    public KdbCipherSession startDecryption(byte[] masterSeed, byte[] transformedKey, byte[] encryptionIV) throws KeePassCryptoException {
+        byte[] masterKey = getMasterKey(masterSeed, transformedKey);
+        try {
+            return aes.startDecryption(masterKey, encryptionIV);
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(masterKey, (byte)0);
+        }
     }
 
     public byte[] encrypt(byte[] plainContentData, byte[] masterSeed, byte[] masterSeed2, int numKeyEncRounds,
             byte[] encryptionIV, byte[] masterPassword, byte[] keyFile, ProgressMonitor pm) throws KeePassCryptoException {
+        byte[] transformedKey = transformKey(masterSeed2, numKeyEncRounds, masterPassword, keyFile, pm);
+        if (transformedKey == null) return null; // user canceled
+        
+        byte[] masterKey = getMasterKey(masterSeed, transformedKey);
+        try {
+            return aes.encrypt(masterKey, plainContentData, encryptionIV, 1, true, pm);
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(transformedKey, (byte)0);
+            ByteArrays.fillCompletelyWith(masterKey, (byte)0);
+        }
+    }
+
+    public KdbCipherSession startEncryption(byte[] masterSeed, byte[] transformedKey, byte[] encryptionIV) throws KeePassCryptoException {
+        byte[] masterKey = getMasterKey(masterSeed, transformedKey);
+        try {
+            return aes.startEncryption(masterKey, encryptionIV);
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(masterKey, (byte)0);
+        }
+    }
+
+    public byte[] transformKey(byte[] masterSeed2, int numKeyEncRounds, byte[] masterPassword, byte[] keyFile, ProgressMonitor pm)
+            throws KeePassCryptoException {
         if (masterPassword == null && keyFile == null) {
             throw new IllegalArgumentException("master password and key file null");
         }
         
         byte[] passwordKey = getPasswordKey(masterPassword, keyFile);
-        
-        byte[] masterKey = encryptMasterKey(masterSeed, masterSeed2, numKeyEncRounds, passwordKey, pm);
-        if (masterKey == null) return null; // user canceled
-        
-        return aes.encrypt(masterKey, plainContentData, encryptionIV, 1, true, pm);
+        byte[] transformedKey = aesKeyTransform != null ? aesKeyTransform.transform(masterSeed2, passwordKey, numKeyEncRounds, pm)
+                : aes.encrypt(masterSeed2, passwordKey, null, numKeyEncRounds, false, pm);
+        if (transformedKey == null) return null; // user canceled
+        try {
+            return sha256.getHash(new byte[][] { transformedKey }, null);
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(transformedKey, (byte)0);
+        }
     }
 
     private byte[] getPasswordKey(byte[] masterPassword, byte[] keyFile) {
@@ -107,12 +159,7 @@ public class KeePassDatabaseAESCryptoAlgorithmV1 implements KeePassDatabaseCrypt
         return passwordKey;
     }
     
-    private byte[] encryptMasterKey(byte[] masterSeed, byte[] masterSeed2, int numKeyEncRounds, byte[] passwordKey, ProgressMonitor pm)
-            throws KeePassCryptoException {
-        byte[] masterKey = aes.encrypt(masterSeed2, passwordKey, null, numKeyEncRounds, false, pm);
-        if (masterKey == null) return null; // user canceled
-        masterKey = sha256.getHash(new byte[][] { masterKey }, null);
-        masterKey = sha256.getHash(new byte[][] { masterSeed, masterKey }, null);
-        return masterKey;
+    private byte[] getMasterKey(byte[] masterSeed, byte[] transformedKey) {
+        return sha256.getHash(new byte[][] { masterSeed, transformedKey }, null);
     }
 }
@@ -21,14 +21,18 @@
 package org.sperle.keepass.kdb.v1;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
 import org.sperle.keepass.crypto.CryptoManager;
 import org.sperle.keepass.crypto.Hash;
+import org.sperle.keepass.crypto.HashSession;
+import org.sperle.keepass.crypto.KdbCipherSession;
 import org.sperle.keepass.crypto.KeePassCryptoException;
 import org.sperle.keepass.crypto.bc.RC4Cipher;
 import org.sperle.keepass.io.IOManager;
+import org.sperle.keepass.io.SaveSession;
 import org.sperle.keepass.kdb.CloseStrategy;
 import org.sperle.keepass.kdb.KdbEntry;
 import org.sperle.keepass.kdb.KeePassDatabase;
@@ -39,6 +43,7 @@ import org.sperle.keepass.kdb.PerformanceStatistics;
 import org.sperle.keepass.monitor.ProgressMonitor;
 import org.sperle.keepass.rand.Random;
 import org.sperle.keepass.util.BinaryData;
+import org.sperle.keepass.util.BlockPipeline;
 import org.sperle.keepass.util.ByteArrays;
 import org.sperle.keepass.util.Passwords;
 
@@ -46,12 +51,32 @@ import org.sperle.keepass.util.Passwords;
  * This KeePass database manager loads and saves V1 databases.
  */
 public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
+    /** Loads the whole file into memory, decrypts it completely, then verifies and extracts the content. */
+    public static final int LOAD_MODE_DEFAULT = 0;
+    /** Reads, decrypts, verifies and extracts the file block by block (memory usage independent of file size). */
+    public static final int LOAD_MODE_STREAMING = 1;
+    /** Like LOAD_MODE_STREAMING, but hashes and extracts the decrypted blocks in separate threads. */
+    public static final int LOAD_MODE_PIPELINED = 2;
+    
+    // size of the blocks that are read from the file in streaming mode
+    private static final int STREAMING_BLOCK_SIZE = 4096;
+    // max. number of decrypted blocks the hash and extraction threads can trail behind
+    private static final int PIPELINE_LENGTH = 8;
+    // a decryption session may return one cipher block more than it got
+    private static final int BLOCK_CIPHER_SIZE = 16;
+    // min. time in ms the key transformation is measured while calibrating the rounds
+    private static final int CALIBRATION_TIME = 100;
+    private static final int CALIBRATION_START_ROUNDS = 1000;
+    
     private final IOManager fileManager;
     private final CryptoManager cryptoManager;
     private final CloseStrategy closeStrategy;
     private final Random rand;
     
     private Hashtable cryptoAlgorithms = new Hashtable();
+    private int loadMode = LOAD_MODE_DEFAULT;
+    private boolean lazyEntryExtraction = false;
+    private boolean transformedKeyCaching = false;
     
     public KeePassDatabaseManagerV1(IOManager fileManager, CryptoManager cryptoManager, CloseStrategy closeStrategy, Random rand) {
 	this.fileManager = fileManager;
@@ -77,15 +102,56 @@ public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
         }        
     }
     
+    /**
+     * Sets the mode that is used to load databases (LOAD_MODE_DEFAULT, LOAD_MODE_STREAMING or LOAD_MODE_PIPELINED).
+     */
+    public void setLoadMode(int loadMode) {
+        if(loadMode != LOAD_MODE_DEFAULT && loadMode != LOAD_MODE_STREAMING && loadMode != LOAD_MODE_PIPELINED) {
+            throw new IllegalArgumentException("unknown load mode");
+        }
+        this.loadMode = loadMode;
+    }
+    
+    public int getLoadMode() {
+        return loadMode;
+    }
+    
+    /**
+     * If set, the fields of the loaded entries (title, notes, dates, ...) are decoded
+     * when they are accessed for the first time, instead of while loading.
+     */
+    public void setLazyEntryExtraction(boolean lazyEntryExtraction) {
+        this.lazyEntryExtraction = lazyEntryExtraction;
+    }
+    
+    public boolean isLazyEntryExtraction() {
+        return lazyEntryExtraction;
+    }
+    
+    /**
+     * If set, the transformed key is cached (encrypted) in the opened database and masterSeed2 is
+     * not changed any more when the database is saved. So only loading needs the expensive key
+     * transformation, saving reuses the cached key (masterSeed and IV still change with every save).
+     */
+    public void setTransformedKeyCaching(boolean transformedKeyCaching) {
+        this.transformedKeyCaching = transformedKeyCaching;
+    }
+    
+    public boolean isTransformedKeyCaching() {
+        return transformedKeyCaching;
+    }
+    
     public KeePassDatabase load(String fileName, String masterPassword, String keyFileName, boolean usePasswordEncryption, ProgressMonitor pm) throws IOException, KeePassCryptoException, KeePassDatabaseException {
         if(masterPassword == null && keyFileName == null) {
             throw new IllegalArgumentException("must provide master password or key file");
         }
+        if(loadMode == LOAD_MODE_STREAMING || loadMode == LOAD_MODE_PIPELINED) {
+            return loadStreaming(fileName, masterPassword, keyFileName, usePasswordEncryption, loadMode == LOAD_MODE_PIPELINED, pm);
+        }
         
         byte[] keyFile = null;
         byte[] data = null;
-        byte[] encryptedContentData = null;
-        byte[] plainContentData = null;
+        byte[] transformedKey = null;
         try {
             if(keyFileName != null) {
                 keyFile = loadKeyFile(keyFileName);
@@ -100,27 +166,34 @@ public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
     	
     	    KeePassDatabaseV1 kdb = new KeePassDatabaseV1(rand, cryptoManager.getPasswordCipher(RC4Cipher.NAME),
     	            usePasswordEncryption, fileName, Passwords.getEncodedMasterPassword(masterPassword), keyFile);
+    	    kdb.setLazyEntryExtraction(lazyEntryExtraction);
     	    kdb.extractHeader(data);
     	    kdb.verifyHeader();
     	    
     	    KeePassDatabaseCryptoAlgorithm cryptoAlgorithmToUse = getCryptoAlgorithmThatCanHandle(kdb);
     	    
-    	    encryptedContentData = kdb.getEncryptedContent(data);
-    	    ps.setEncryptedContentDataLength(encryptedContentData.length);
+    	    int contentOffset = KeePassDatabaseV1.HEADER_LENGTH;
+    	    ps.setEncryptedContentDataLength(data.length - contentOffset);
+    	    
+    	    start = System.currentTimeMillis();
+    	    transformedKey = transformKey(kdb, cryptoAlgorithmToUse, Passwords.getEncodedMasterPassword(masterPassword), keyFile, pm);
+    	    if(transformedKey == null) return null; // user canceled
+    	    ps.setMasterKeyEncryptionTime(System.currentTimeMillis() - start);
     	    
-    	    plainContentData = cryptoAlgorithmToUse.decrypt(encryptedContentData, kdb.getMasterSeed(), 
-    	            kdb.getMasterSeed2(), kdb.getNumKeyEncRounds(), kdb.getEncryptionIV(), Passwords.getEncodedMasterPassword(masterPassword), keyFile, ps, pm);
-    	    if(plainContentData == null) return null; // user canceled
-    	    ps.setPlainContentDataLength(plainContentData.length);
+    	    // content is decrypted in place, so the file data is the only copy held in memory
+    	    int plainContentLength = cryptoAlgorithmToUse.decrypt(data, contentOffset, data.length - contentOffset, 
+    	            kdb.getMasterSeed(), transformedKey, kdb.getEncryptionIV(), ps, pm);
+    	    if(plainContentLength == -1) return null; // user canceled
+    	    ps.setPlainContentDataLength(plainContentLength);
     	    
     	    start = System.currentTimeMillis();
-    	    byte[] hash = calculateContentHash(plainContentData, cryptoManager.getHash("SHA256"), pm);
+    	    byte[] hash = calculateContentHash(data, contentOffset, plainContentLength, cryptoManager.getHash("SHA256"), pm);
     	    if(hash == null) return null; // user canceled
     	    kdb.verifyContent(hash);
     	    ps.setContentHashCalculationTime(System.currentTimeMillis() - start);
     	    
     	    start = System.currentTimeMillis();
-    	    kdb.extractContent(plainContentData, pm);
+    	    kdb.extractContent(data, contentOffset, pm);
     	    if(pm != null && pm.isCanceled()) return null;
     	    ps.setContentExtractionTime(System.currentTimeMillis() - start);
     	    kdb.setPerformanceStatistics(ps);
@@ -130,8 +203,187 @@ public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
         } finally { // delete all sensible data
             ByteArrays.fillCompletelyWith(keyFile, (byte)0);
             ByteArrays.fillCompletelyWith(data, (byte)0);
-            ByteArrays.fillCompletelyWith(encryptedContentData, (byte)0);
-            ByteArrays.fillCompletelyWith(plainContentData, (byte)0);
+            ByteArrays.fillCompletelyWith(transformedKey, (byte)0);
+        }
+    }
+    
+    protected KeePassDatabase loadStreaming(String fileName, String masterPassword, String keyFileName, boolean usePasswordEncryption, boolean pipelined, ProgressMonitor pm) throws IOException, KeePassCryptoException, KeePassDatabaseException {
+        byte[] keyFile = null;
+        byte[] header = null;
+        InputStream is = null;
+        KeePassDatabaseV1 kdb = null;
+        KdbContentExtractorV1 extractor = null;
+        byte[] transformedKey = null;
+        boolean loaded = false;
+        try {
+            if(keyFileName != null) {
+                keyFile = loadKeyFile(keyFileName);
+            }
+            
+            if(pm != null) pm.setSteps(2);
+            PerformanceStatistics ps = new PerformanceStatistics();
+            long start = System.currentTimeMillis();
+            int encryptedContentLength = (int)fileManager.getFileSize(fileName) - KeePassDatabaseV1.HEADER_LENGTH;
+            is = fileManager.openInputStream(fileName);
+            header = new byte[KeePassDatabaseV1.HEADER_LENGTH];
+            if(encryptedContentLength < 0 || readFully(is, header) < header.length) {
+                throw new KeePassDatabaseException("kdb file invalid: too short");
+            }
+            long loadTime = System.currentTimeMillis() - start;
+            
+            kdb = new KeePassDatabaseV1(rand, cryptoManager.getPasswordCipher(RC4Cipher.NAME),
+                    usePasswordEncryption, fileName, Passwords.getEncodedMasterPassword(masterPassword), keyFile);
+            kdb.setLazyEntryExtraction(lazyEntryExtraction);
+            kdb.extractHeader(header);
+            kdb.verifyHeader();
+            ps.setEncryptedContentDataLength(encryptedContentLength);
+            
+            KeePassDatabaseCryptoAlgorithm cryptoAlgorithmToUse = getCryptoAlgorithmThatCanHandle(kdb);
+            start = System.currentTimeMillis();
+            transformedKey = transformKey(kdb, cryptoAlgorithmToUse, Passwords.getEncodedMasterPassword(masterPassword), keyFile, pm);
+            if(transformedKey == null) return null; // user canceled
+            ps.setMasterKeyEncryptionTime(System.currentTimeMillis() - start);
+            KdbCipherSession cipher = cryptoAlgorithmToUse.startDecryption(kdb.getMasterSeed(), transformedKey, kdb.getEncryptionIV());
+            HashSession hash = cryptoManager.getHash("SHA256").startHash();
+            extractor = new KdbContentExtractorV1(kdb, encryptedContentLength);
+            
+            if(pm != null) pm.nextStep(encryptedContentLength / STREAMING_BLOCK_SIZE + 1, "pm_decrypt");
+            ps.setLoadTime(loadTime);
+            boolean completed = pipelined ? decryptPipelined(is, cipher, hash, extractor, ps, pm) : decryptStreaming(is, cipher, hash, extractor, ps, pm);
+            if(!completed) return null; // user canceled
+            
+            start = System.currentTimeMillis();
+            kdb.verifyContent(hash.doFinal());
+            ps.setContentHashCalculationTime(ps.getContentHashCalculationTime() + System.currentTimeMillis() - start);
+            extractor.checkComplete(); // corrupt content is only reported after the hash matched
+            
+            kdb.setPerformanceStatistics(ps);
+            kdb.checkNewBackupFlag();
+            kdb.initChangeEventSupport();
+            loaded = true;
+            return kdb;
+        } finally { // delete all sensible data
+            try {if(is != null) is.close();} catch (IOException e) {}
+            if(extractor != null) extractor.release();
+            if(!loaded && kdb != null) kdb.close();
+            ByteArrays.fillCompletelyWith(keyFile, (byte)0);
+            ByteArrays.fillCompletelyWith(header, (byte)0);
+            ByteArrays.fillCompletelyWith(transformedKey, (byte)0);
+        }
+    }
+    
+    private boolean decryptStreaming(InputStream is, KdbCipherSession cipher, HashSession hash, KdbContentExtractorV1 extractor, 
+            PerformanceStatistics ps, ProgressMonitor pm) throws IOException, KeePassCryptoException, KeePassDatabaseException {
+        byte[] encryptedBlock = new byte[STREAMING_BLOCK_SIZE];
+        byte[] plainBlock = new byte[cipher.getUpdateOutputSize(STREAMING_BLOCK_SIZE) + BLOCK_CIPHER_SIZE];
+        try {
+            int plainContentLength = 0;
+            long loadTime = 0, decryptionTime = 0, hashTime = 0, extractionTime = 0;
+            int read;
+            do {
+                long start = System.currentTimeMillis();
+                read = is.read(encryptedBlock, 0, encryptedBlock.length);
+                loadTime += System.currentTimeMillis() - start;
+                
+                start = System.currentTimeMillis();
+                int plainLength = read > -1 ? cipher.update(encryptedBlock, 0, read, plainBlock, 0) : cipher.doFinal(plainBlock, 0);
+                decryptionTime += System.currentTimeMillis() - start;
+                
+                start = System.currentTimeMillis();
+                hash.update(plainBlock, 0, plainLength);
+                hashTime += System.currentTimeMillis() - start;
+                
+                start = System.currentTimeMillis();
+                extractor.update(plainBlock, 0, plainLength);
+                extractionTime += System.currentTimeMillis() - start;
+                plainContentLength += plainLength;
+                
+                if(pm != null) {
+                    if(pm.isCanceled()) return false;
+                    pm.tick();
+                }
+            } while(read > -1);
+            
+            ps.setLoadTime(ps.getLoadTime() + loadTime);
+            ps.setPlainContentDataLength(plainContentLength);
+            ps.setDecryptionTime(decryptionTime);
+            ps.setContentHashCalculationTime(hashTime);
+            ps.setContentExtractionTime(extractionTime);
+            return true;
+        } finally { // delete all sensible data
+            ByteArrays.fillCompletelyWith(encryptedBlock, (byte)0);
+            ByteArrays.fillCompletelyWith(plainBlock, (byte)0);
+        }
+    }
+    
+    private boolean decryptPipelined(InputStream is, final KdbCipherSession cipher, final HashSession hash, final KdbContentExtractorV1 extractor, 
+            PerformanceStatistics ps, ProgressMonitor pm) throws IOException, KeePassCryptoException, KeePassDatabaseException {
+        BlockPipeline pipeline = new BlockPipeline(PIPELINE_LENGTH, cipher.getUpdateOutputSize(STREAMING_BLOCK_SIZE) + BLOCK_CIPHER_SIZE, 2);
+        PipelineStage hashStage = new PipelineStage(pipeline, 0) {
+            protected void process(byte[] plainBlock, int length) {
+                hash.update(plainBlock, 0, length);
+            }
+        };
+        PipelineStage extractionStage = new PipelineStage(pipeline, 1) {
+            protected void process(byte[] plainBlock, int length) {
+                extractor.update(plainBlock, 0, length);
+            }
+        };
+        byte[] encryptedBlock = new byte[STREAMING_BLOCK_SIZE];
+        boolean completed = false;
+        try {
+            hashStage.start();
+            extractionStage.start();
+            
+            int plainContentLength = 0;
+            long loadTime = 0, decryptionTime = 0;
+            int read;
+            do {
+                byte[] plainBlock = pipeline.nextFreeBlock();
+                if(plainBlock == null) break; // aborted by a failing stage
+                
+                long start = System.currentTimeMillis();
+                read = is.read(encryptedBlock, 0, encryptedBlock.length);
+                loadTime += System.currentTimeMillis() - start;
+                
+                start = System.currentTimeMillis();
+                int plainLength = read > -1 ? cipher.update(encryptedBlock, 0, read, plainBlock, 0) : cipher.doFinal(plainBlock, 0);
+                decryptionTime += System.currentTimeMillis() - start;
+                pipeline.publish(plainLength);
+                plainContentLength += plainLength;
+                
+                if(pm != null) {
+                    if(pm.isCanceled()) return false;
+                    pm.tick();
+                }
+            } while(read > -1);
+            pipeline.finish();
+            hashStage.join();
+            extractionStage.join();
+            hashStage.rethrowError();
+            if(extractionStage.getError() != null) { // reported after the content hash was verified
+                extractor.fail(extractionStage.getError());
+            }
+            
+            ps.setLoadTime(ps.getLoadTime() + loadTime);
+            ps.setPlainContentDataLength(plainContentLength);
+            ps.setDecryptionTime(decryptionTime);
+            ps.setContentHashCalculationTime(hashStage.getProcessingTime());
+            ps.setContentExtractionTime(extractionStage.getProcessingTime());
+            completed = true;
+            return true;
+        } catch (InterruptedException e) {
+            return false; // handled like a cancel
+        } finally { // stop stages and delete all sensible data
+            if(!completed) {
+                pipeline.abort();
+                try {
+                    hashStage.join();
+                    extractionStage.join();
+                } catch (InterruptedException e) {}
+            }
+            pipeline.wipe();
+            ByteArrays.fillCompletelyWith(encryptedBlock, (byte)0);
         }
     }
     
@@ -179,6 +431,36 @@ public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
         kdbV1.removeKeyFile();
     }
     
+    public int calibrateKeyEncRounds(KeePassDatabase kdb, int unlockTime, boolean apply) throws KeePassCryptoException, KeePassDatabaseException {
+        if(!(kdb instanceof KeePassDatabaseV1)) {
+            throw new KeePassDatabaseException("KeePass database version not supported!");
+        }
+        if(unlockTime < 1) {
+            throw new IllegalArgumentException("unlock time must be positive");
+        }
+        KeePassDatabaseV1 kdbV1 = (KeePassDatabaseV1)kdb;
+        KeePassDatabaseCryptoAlgorithm cryptoAlgorithmToUse = getCryptoAlgorithmThatCanHandle(kdbV1);
+        
+        byte[] seed = new byte[32];
+        byte[] password = new byte[0];
+        int rounds = CALIBRATION_START_ROUNDS;
+        // warm up (class loading, JIT), then double the rounds until the measurement is long enough to be exact
+        ByteArrays.fillCompletelyWith(cryptoAlgorithmToUse.transformKey(seed, rounds, password, null, null), (byte)0);
+        long elapsed;
+        while(true) {
+            long start = System.currentTimeMillis();
+            ByteArrays.fillCompletelyWith(cryptoAlgorithmToUse.transformKey(seed, rounds, password, null, null), (byte)0);
+            elapsed = System.currentTimeMillis() - start;
+            if(elapsed >= CALIBRATION_TIME || rounds > Integer.MAX_VALUE / 2) break;
+            rounds *= 2;
+        }
+        
+        long calibrated = (long)rounds * unlockTime / Math.max(elapsed, 1);
+        int numKeyEncRounds = (int)Math.max(1, Math.min(calibrated, Integer.MAX_VALUE));
+        if(apply) kdbV1.setNumKeyEncRounds(numKeyEncRounds);
+        return numKeyEncRounds;
+    }
+    
     public boolean save(KeePassDatabase kdb, String fileName, ProgressMonitor pm) throws IOException, KeePassDatabaseException, KeePassCryptoException {
         return save(kdb, fileName, pm, false);
     }
@@ -193,34 +475,64 @@ public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
         }
         KeePassDatabaseV1 kdbV1 = (KeePassDatabaseV1)kdb;
         
-        byte[] plainContentData = null;
-        byte[] encryptedContentData = null;
-        byte[] encryptedDB = null;
+        SaveSession out = null;
+        KdbContentWriterV1 writer = null;
+        byte[] masterPassword = null;
+        byte[] keyFile = null;
+        byte[] transformedKey = null;
+        boolean saved = false;
         try {
             KeePassDatabaseCryptoAlgorithm cryptoAlgorithmToUse = getCryptoAlgorithmThatCanHandle(kdbV1);
             
-            if(pm != null) pm.setSteps(5);
-            plainContentData = kdbV1.getPlainContentData(pm, false);
-            if(plainContentData == null) return false; // user canceled
-            
+            if(pm != null) pm.setSteps(2);
+            if(!transformedKeyCaching) kdbV1.clearTransformedKey();
             if(!forTest) kdbV1.reinitBeforeSave();
-            encryptedContentData = cryptoAlgorithmToUse.encrypt(plainContentData, kdbV1.getMasterSeed(), 
-                    kdbV1.getMasterSeed2(), kdbV1.getNumKeyEncRounds(), kdbV1.getEncryptionIV(), kdbV1.getMasterPassword(), kdbV1.getKeyFile(), pm);
-            if (encryptedContentData == null) return false; // user canceled
-            byte[] hash = calculateContentHash(plainContentData, cryptoManager.getHash("SHA256"), pm);
-            if(hash == null) return false; // user canceled
-            kdbV1.setContentHash(hash);
-            // TODO this statement uses too much memory! ->
-            encryptedDB = ByteArrays.append(kdbV1.getHeader(), encryptedContentData);
-            fileManager.saveBinary(fileName, encryptedDB, pm);
+            masterPassword = kdbV1.getMasterPassword();
+            keyFile = kdbV1.getKeyFile();
+            transformedKey = transformKey(kdbV1, cryptoAlgorithmToUse, masterPassword, keyFile, pm);
+            if(transformedKey == null) return false; // user canceled
+            KdbCipherSession cipher = cryptoAlgorithmToUse.startEncryption(kdbV1.getMasterSeed(), transformedKey, kdbV1.getEncryptionIV());
+            
+            // content hash is part of the header, so the header is written after the content
+            out = fileManager.startSave(fileName);
+            out.write(new byte[KeePassDatabaseV1.HEADER_LENGTH], 0, KeePassDatabaseV1.HEADER_LENGTH);
+            writer = new KdbContentWriterV1(cryptoManager.getHash("SHA256").startHash(), cipher, out, STREAMING_BLOCK_SIZE);
+            if(!kdbV1.writeContent(writer, pm, false)) return false; // user canceled
+            kdbV1.setContentHash(writer.finish());
+            byte[] header = kdbV1.getHeader();
+            out.overwrite(0, header, 0, header.length);
+            out.commit();
+            saved = true;
+            
             kdbV1.setFileName(fileName);
             kdbV1.resetChanged();
             return true;
         } finally { // delete all sensible data
-            ByteArrays.fillCompletelyWith(plainContentData, (byte)0);
-            ByteArrays.fillCompletelyWith(encryptedContentData, (byte)0);
-            ByteArrays.fillCompletelyWith(encryptedDB, (byte)0);
+            if(writer != null) writer.release();
+            if(out != null && !saved) out.abort();
+            ByteArrays.fillCompletelyWith(masterPassword, (byte)0);
+            ByteArrays.fillCompletelyWith(keyFile, (byte)0);
+            ByteArrays.fillCompletelyWith(transformedKey, (byte)0);
+        }
+    }
+    
+    /**
+     * Returns the transformed key of the database, from its cache if possible (returns null, if user canceled).
+     */
+    private byte[] transformKey(KeePassDatabaseV1 kdb, KeePassDatabaseCryptoAlgorithm cryptoAlgorithm, 
+            byte[] masterPassword, byte[] keyFile, ProgressMonitor pm) throws KeePassCryptoException {
+        byte[] transformedKey = transformedKeyCaching ? kdb.getTransformedKey() : null;
+        if(transformedKey != null) {
+            if(pm != null) {
+                pm.nextStep(1, "pm_encrypt");
+                pm.tick();
+            }
+            return transformedKey;
         }
+        
+        transformedKey = cryptoAlgorithm.transformKey(kdb.getMasterSeed2(), kdb.getNumKeyEncRounds(), masterPassword, keyFile, pm);
+        if(transformedKeyCaching && transformedKey != null) kdb.setTransformedKey(transformedKey);
+        return transformedKey;
     }
     
     private KeePassDatabaseCryptoAlgorithm getCryptoAlgorithmThatCanHandle(KeePassDatabaseV1 kdb) throws KeePassDatabaseException {
@@ -234,8 +546,27 @@ public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
         throw new KeePassDatabaseException("Encryption algorithm not supported!");
     }
     
-    private byte[] calculateContentHash(byte[] plainContentData, Hash hash, ProgressMonitor pm) throws KeePassDatabaseException {
-        return hash.getHash(new byte[][]{plainContentData}, pm);
+    private byte[] calculateContentHash(byte[] data, int offset, int length, Hash hash, ProgressMonitor pm) throws KeePassDatabaseException {
+        if(pm != null) pm.nextStep((length + STREAMING_BLOCK_SIZE - 1) / STREAMING_BLOCK_SIZE, "pm_hash");
+        HashSession session = hash.startHash();
+        for (int blockOffset = offset; blockOffset < offset + length; blockOffset += STREAMING_BLOCK_SIZE) {
+            session.update(data, blockOffset, Math.min(STREAMING_BLOCK_SIZE, offset + length - blockOffset));
+            if(pm != null) {
+                if(pm.isCanceled()) return null;
+                pm.tick();
+            }
+        }
+        return session.doFinal();
+    }
+    
+    private int readFully(InputStream is, byte[] b) throws IOException {
+        int length = 0;
+        while(length < b.length) {
+            int read = is.read(b, length, b.length - length);
+            if(read < 0) break;
+            length += read;
+        }
+        return length;
     }
     
     private byte[] loadKeyFile(String keyFileName) throws IOException {
@@ -248,7 +579,82 @@ public class KeePassDatabaseManagerV1 implements KeePassDatabaseManager {
             if(keyFileSize < 64) {
                 throw new IllegalArgumentException("key file to short");
             }
-            return fileManager.generateHash(keyFileName, 2048);
+            return hashFile(keyFileName, cryptoManager.getHash("SHA256"));
+        }
+    }
+    
+    /**
+     * Hashes a file part by part, so that only one block is held in memory.
+     */
+    private byte[] hashFile(String fileName, Hash hash) throws IOException {
+        InputStream is = null;
+        byte[] block = new byte[STREAMING_BLOCK_SIZE];
+        try {
+            is = fileManager.openInputStream(fileName);
+            HashSession session = hash.startHash();
+            int read;
+            while((read = is.read(block, 0, block.length)) > -1) {
+                session.update(block, 0, read);
+            }
+            return session.doFinal();
+        } finally {
+            ByteArrays.fillCompletelyWith(block, (byte)0);
+            try {if(is != null) is.close();} catch (IOException e) {}
         }
     }
+    
+    /**
+     * Thread that processes all blocks of a pipeline in order. If processing
+     * fails, the remaining blocks are still released, so the cipher runs to its
+     * end and a decryption error is reported before the error of the stage.
+     */
+    private static abstract class PipelineStage extends Thread {
+        private final BlockPipeline pipeline;
+        private final int consumer;
+        private long processingTime = 0;
+        private Throwable error;
+        
+        PipelineStage(BlockPipeline pipeline, int consumer) {
+            this.pipeline = pipeline;
+            this.consumer = consumer;
+        }
+        
+        protected abstract void process(byte[] plainBlock, int length) throws KeePassDatabaseException;
+        
+        public void run() {
+            try {
+                int index;
+                while((index = pipeline.take(consumer)) > -1) {
+                    if(error == null) {
+                        long start = System.currentTimeMillis();
+                        try {
+                            process(pipeline.getBlock(index), pipeline.getLength(index));
+                        } catch (Throwable t) {
+                            error = t; // skip the remaining blocks
+                        }
+                        processingTime += System.currentTimeMillis() - start;
+                    }
+                    pipeline.release(consumer);
+                }
+            } catch (InterruptedException e) {
+                error = e;
+                pipeline.abort(); // stop producer and other stages
+            }
+        }
+        
+        long getProcessingTime() {
+            return processingTime;
+        }
+        
+        Throwable getError() {
+            return error;
+        }
+        
+        void rethrowError() throws KeePassDatabaseException {
+            if(error instanceof KeePassDatabaseException) throw (KeePassDatabaseException)error;
+            if(error instanceof RuntimeException) throw (RuntimeException)error;
+            if(error instanceof Error) throw (Error)error;
+            if(error != null) throw new KeePassDatabaseException("Exception during content processing: " + error.getMessage());
+        }
+    }
 }
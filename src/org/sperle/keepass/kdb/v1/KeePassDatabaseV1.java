@@ -20,8 +20,10 @@
 
 package org.sperle.keepass.kdb.v1;
 
+import java.io.IOException;
 import java.util.Vector;
 
+import org.sperle.keepass.crypto.KeePassCryptoException;
 import org.sperle.keepass.crypto.PasswordCipher;
 import org.sperle.keepass.crypto.bc.RC4Cipher;
 import org.sperle.keepass.kdb.AbstractKeePassDatabase;
@@ -34,6 +36,8 @@ import org.sperle.keepass.monitor.ProgressMonitor;
 import org.sperle.keepass.rand.Random;
 import org.sperle.keepass.util.BinaryData;
 import org.sperle.keepass.util.ByteArrays;
+import org.sperle.keepass.util.IntHashtable;
+import org.sperle.keepass.util.UuidHashtable;
 
 /**
  * A KeePass database V1.
@@ -61,21 +65,31 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
     private int numGroups; // init: 0; change: creation/deletion of group
     private int numEntries; // init: 0; change: creation/deletion of entry
     private byte[] contentHash = new byte[32]; // init: none; change: content change
-    private byte[] masterSeed2 = new byte[32]; // init: none; change: random
+    private byte[] masterSeed2 = new byte[32]; // init: none; change: random (kept while transformed key is cached)
     private int numKeyEncRounds; // init: DEFAULT_NUMKEYENCROUNDS; change: never (user choice)
     
     // master password & key file (encrypted)
     private transient byte[] masterPasswordEncrypted;
     private transient byte[] keyFileEncrypted;
+    
+    // transformed key cache (encrypted), only valid for the masterSeed2/numKeyEncRounds it was calculated with
+    private transient byte[] transformedKeyEncrypted;
+    private transient byte[] transformedKeySeed;
+    private transient int transformedKeyRounds;
     
     // content
     private Vector groups = new Vector();
+    private KdbGroupTreeV1 groupTree = new KdbGroupTreeV1(); // also indexes the groups by id
+    private KdbGroup backupGroup; // cache of getBackupGroup(), validated on access
     private Vector entries = new Vector();
+    private UuidHashtable entryIndex = new UuidHashtable(); // entry id -> entry
+    private IntHashtable groupEntries = new IntHashtable(); // group id -> Vector of its entries (without internal ones)
     
     // object graph
     private transient Random rand;
     private transient PasswordCipher cipher;
     private transient boolean useEntryPasswordEncryption = false;
+    private transient boolean lazyEntryExtraction = false;
     private transient PerformanceStatistics performanceStatistics;
     
     // used for testing
@@ -108,10 +122,17 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
         numKeyEncRounds = DEFAULT_NUMKEYENCROUNDS;
     }
     
+    /**
+     * Generates new random seeds and IV. If the transformed key is cached, masterSeed2 is kept,
+     * so the cached key stays valid (the master key still changes with the masterSeed).
+     */
     protected void reinitBeforeSave() {
         masterSeed = rand.nextBytes(16);
         encryptionIV = rand.nextBytes(16);
-        masterSeed2 = rand.nextBytes(32);
+        if(!isTransformedKeyValid()) {
+            clearTransformedKey();
+            masterSeed2 = rand.nextBytes(32);
+        }
     }
     
     protected void extractHeader(byte[] data) throws KeePassDatabaseException {
@@ -170,6 +191,7 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
     }
 
     protected void setMasterPassword(byte[] masterPassword) {
+        clearTransformedKey();
         this.masterPasswordEncrypted = (masterPassword != null ? cipher.encrypt(masterPassword) : null);
         this.changed = true;
     }
@@ -188,12 +210,14 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
     }
     
     protected void removeKeyFile() {
+        clearTransformedKey();
         ByteArrays.fillCompletelyWith(this.keyFileEncrypted, (byte)0);
         this.keyFileEncrypted = null;
         this.changed = true;
     }
     
     protected void setKeyFile(byte[] keyFile) {
+        clearTransformedKey();
         this.keyFileEncrypted = (keyFile != null ? cipher.encrypt(keyFile) : null);
         this.changed = true;
     }
@@ -203,29 +227,58 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
         return keyFileEncrypted;
     }
     
-    protected byte[] getEncryptedContent(byte[] data) {
-	byte[] encryptedContentData = new byte[data.length - HEADER_LENGTH];
-	ByteArrays.fillCompletelyFrom(data, HEADER_LENGTH, encryptedContentData);
-	return encryptedContentData;
+    /**
+     * Returns the cached transformed key, or null if it is not cached or was calculated
+     * for another masterSeed2/numKeyEncRounds.
+     */
+    protected byte[] getTransformedKey() {
+        return isTransformedKeyValid() ? cipher.decrypt(this.transformedKeyEncrypted) : null;
+    }
+    
+    /**
+     * Caches the transformed key for the current masterSeed2/numKeyEncRounds.
+     */
+    protected void setTransformedKey(byte[] transformedKey) {
+        clearTransformedKey();
+        this.transformedKeyEncrypted = cipher.encrypt(transformedKey);
+        this.transformedKeySeed = ByteArrays.returnCopy(masterSeed2);
+        this.transformedKeyRounds = numKeyEncRounds;
+    }
+    
+    /**
+     * Deletes the cached transformed key (e.g. if the credentials change).
+     */
+    protected void clearTransformedKey() {
+        ByteArrays.fillCompletelyWith(this.transformedKeyEncrypted, (byte)0);
+        ByteArrays.fillCompletelyWith(this.transformedKeySeed, (byte)0);
+        this.transformedKeyEncrypted = null;
+        this.transformedKeySeed = null;
+    }
+    
+    private boolean isTransformedKeyValid() {
+        return transformedKeyEncrypted != null && transformedKeyRounds == numKeyEncRounds 
+                && ByteArrays.equals(transformedKeySeed, masterSeed2);
+    }
+    
+    protected void extractContent(byte[] plainContentData, ProgressMonitor pm) {
+        extractContent(plainContentData, 0, pm);
     }
     
-    protected void extractContent(byte[] plainContentData, ProgressMonitor pm) {
+    /**
+     * Extracts the content that starts at the given offset (e.g. decrypted in place behind the header).
+     */
+    protected void extractContent(byte[] plainContentData, int offset, ProgressMonitor pm) {
         if(pm != null) pm.nextStep(numGroups+numEntries, "pm_extract");
         
-	int offset = 0;
 	for (int i = 0; i < numGroups; i++) {
-	    KdbGroupV1 group = new KdbGroupV1();
-	    offset = group.extract(plainContentData, offset);
-	    groups.addElement(group);
+	    offset = extractGroup(plainContentData, offset);
 	    if(pm != null) {
                 if(pm.isCanceled()) return;
                 pm.tick();
             }
 	}
 	for (int i = 0; i < numEntries; i++) {
-	    KdbEntryV1 entry = new KdbEntryV1(useEntryPasswordEncryption ? cipher : null);
-	    offset = entry.extract(plainContentData, offset);
-	    entries.addElement(entry);
+	    offset = extractEntry(plainContentData, offset);
 	    if(pm != null) {
                 if(pm.isCanceled()) return;
                 pm.tick();
@@ -233,27 +286,93 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
 	}
     }
     
+    /**
+     * Extracts one group that starts at the given offset and returns the offset behind it.
+     */
+    protected int extractGroup(byte[] plainContentData, int offset) {
+        KdbGroupV1 group = new KdbGroupV1();
+        offset = group.extract(plainContentData, offset);
+        groupTree.append(group, groups.isEmpty() ? null : (KdbGroup) groups.lastElement());
+        groups.addElement(group);
+        return offset;
+    }
+    
+    /**
+     * Extracts one entry that starts at the given offset and returns the offset behind it.
+     */
+    protected int extractEntry(byte[] plainContentData, int offset) {
+        KdbEntryV1 entry = new KdbEntryV1(useEntryPasswordEncryption ? cipher : null);
+        offset = lazyEntryExtraction ? entry.extractLazy(plainContentData, offset) : entry.extract(plainContentData, offset);
+        entries.addElement(entry);
+        indexEntry(entry);
+        return offset;
+    }
+    
+    /**
+     * If set, the fields of the entries are not decoded before they are accessed for the first time.
+     */
+    protected void setLazyEntryExtraction(boolean lazyEntryExtraction) {
+        this.lazyEntryExtraction = lazyEntryExtraction;
+    }
+    
     // forTest: can not test time values that are automatically set (lastAccessTime)
     protected byte[] getPlainContentData(ProgressMonitor pm, boolean forTest) {
-        byte[] plainContentData = new byte[0];
         if(pm != null) pm.nextStep(groups.size() + entries.size(), "pm_extract");
+        int length = 0;
         for(int i = 0; i < groups.size(); i++) {
-            plainContentData = ByteArrays.append(plainContentData, ((KdbGroupV1)groups.elementAt(i)).getPlainContentData(forTest));
+            length += ((KdbGroupV1)groups.elementAt(i)).getPlainContentLength(forTest);
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            length += ((KdbEntryV1)entries.elementAt(i)).getPlainContentLength(forTest);
+        }
+        
+        byte[] plainContentData = new byte[length];
+        int offset = 0;
+        for(int i = 0; i < groups.size(); i++) {
+            offset = ((KdbGroupV1)groups.elementAt(i)).writePlainContentData(plainContentData, offset, forTest);
             if(pm != null) {
-                if(pm.isCanceled()) return null;
+                if(pm.isCanceled()) {
+                    ByteArrays.fillCompletelyWith(plainContentData, (byte)0);
+                    return null;
+                }
                 pm.tick();
             }
         }
         for (int i = 0; i < entries.size(); i++) {
-            plainContentData = ByteArrays.append(plainContentData, ((KdbEntryV1)entries.elementAt(i)).getPlainContentData(forTest));
+            offset = ((KdbEntryV1)entries.elementAt(i)).writePlainContentData(plainContentData, offset, forTest);
             if(pm != null) {
-                if(pm.isCanceled()) return null;
+                if(pm.isCanceled()) {
+                    ByteArrays.fillCompletelyWith(plainContentData, (byte)0);
+                    return null;
+                }
                 pm.tick();
             }
         }
         return plainContentData;
     }
     
+    /**
+     * Serializes all groups and entries with the given content writer (returns false, if user canceled).
+     */
+    protected boolean writeContent(KdbContentWriterV1 writer, ProgressMonitor pm, boolean forTest) throws IOException, KeePassCryptoException {
+        if(pm != null) pm.nextStep(groups.size() + entries.size(), "pm_encrypt");
+        for(int i = 0; i < groups.size(); i++) {
+            writer.write((KdbGroupV1)groups.elementAt(i), forTest);
+            if(pm != null) {
+                if(pm.isCanceled()) return false;
+                pm.tick();
+            }
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            writer.write((KdbEntryV1)entries.elementAt(i), forTest);
+            if(pm != null) {
+                if(pm.isCanceled()) return false;
+                pm.tick();
+            }
+        }
+        return true;
+    }
+    
     protected boolean isSignatureCorrect() {
 	return signature[0] == SIGNATURE1 && signature[1] == SIGNATURE2;
     }
@@ -340,15 +459,15 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
         
         if(parent == null) {
             ((KdbGroupV1)group).setTreeLevel(KeePassDatabase.ROOT_LEVEL);
+            groupTree.append(group, groups.isEmpty() ? null : (KdbGroup) groups.lastElement());
             groups.addElement(group);
         } else {
             ((KdbGroupV1)group).setTreeLevel(parent.getTreeLevel() + 1);
             
-            int insertAtIndex = 0;
-            Vector childGroups = getChildGroups(parent);
-            if(childGroups.size() == 0) insertAtIndex = groups.indexOf(parent) + 1;
-            else insertAtIndex = groups.indexOf(childGroups.lastElement()) + 1;
+            // behind the whole subtree of the parent, so the group becomes its last child
+            int insertAtIndex = indexOfSame(groups, groupTree.getLastDescendant(parent)) + 1;
             groups.insertElementAt(group, insertAtIndex);
+            groupTree.insert(group, parent);
         }
         this.numGroups++;
         this.changed = true;
@@ -362,18 +481,44 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
             throw new IllegalStateException("can not delete backup group");
         }
         
-        groups.removeElement(group);
+        removeSame(groups, group);
+        groupTree.remove(group);
         this.numGroups--;
         this.changed = true;
     }
     
+    public KdbGroup getGroup(int id) {
+        return groupTree.getGroup(id);
+    }
+    
+    public Vector getRootGroups() {
+        return groupTree.getRoots();
+    }
+    
+    public Vector getChildGroups(KdbGroup parent) {
+        return groupTree.getChildren(parent);
+    }
+    
+    public KdbGroup getParentGroup(KdbGroup group) {
+        return groupTree.getParent(group);
+    }
+    
+    public KdbGroup getRootGroup(KdbGroup group) {
+        return groupTree.getRoot(group);
+    }
+    
+    public KdbGroup getRootGroup(KdbEntry entry) {
+        return groupTree.getRoot(getParentGroup(entry));
+    }
+    
+    public Vector getSiblingGroups(KdbGroup group) {
+        if(group.isRoot()) return getRootGroups();
+        KdbGroup parent = getParentGroup(group);
+        return parent == null ? new Vector(0) : getChildGroups(parent);
+    }
+    
     private boolean existsGroupWithId(int id) {
-        for(int i = 0; i < groups.size(); i++) {
-            if(id == ((KdbGroup)groups.elementAt(i)).getId()) {
-                return true;
-            }
-        }
-        return false;
+        return groupTree.getGroup(id) != null;
     }
     
     public Vector getEntries() {
@@ -399,32 +544,113 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
         
         ((KdbEntryV1)entry).setGroupId(parent.getId());
 	entries.addElement(entry);
+	indexEntry((KdbEntryV1)entry);
 	numEntries++;
 	changed = true;
     }
     
+    public KdbEntry getEntry(byte[] id) {
+        if(UuidHashtable.isUuid(id)) return (KdbEntry) entryIndex.get(id);
+        return super.getEntry(id); // ids that are no UUID are not indexed
+    }
+    
     private boolean existsEntryWithId(byte[] id) {
-        for(int i = 0; i < entries.size(); i++) {
-            if(ByteArrays.equals(id,((KdbEntry)entries.elementAt(i)).getId())) {
-                return true;
-            }
+        return getEntry(id) != null;
+    }
+    
+    public Vector getEntries(KdbGroup group) {
+        if(group == null) {
+            return new Vector(0);
+        }
+        Vector groupEntries = (Vector) this.groupEntries.get(group.getId());
+        if(groupEntries == null) {
+            return new Vector(0);
+        }
+        Vector ents = new Vector(groupEntries.size());
+        for (int i = 0; i < groupEntries.size(); i++) {
+            ents.addElement(groupEntries.elementAt(i));
         }
-        return false;
+        return ents;
+    }
+    
+    private void indexEntry(KdbEntryV1 entry) {
+        // like the former scan, the first entry of an id wins
+        if(UuidHashtable.isUuid(entry.getId()) && entryIndex.get(entry.getId()) == null) entryIndex.put(entry.getId(), entry);
+        addToGroupEntries(entry, entry.getGroupId());
+        entry.setDatabase(this);
+    }
+    
+    /**
+     * Moves the entry to the list of its new group, called by the entry itself.
+     */
+    void groupIdChanged(KdbEntryV1 entry, int oldGroupId) {
+        removeFromGroupEntries(entry, oldGroupId);
+        addToGroupEntries(entry, entry.getGroupId());
+    }
+    
+    private void addToGroupEntries(KdbEntry entry, int groupId) {
+        if(entry.isInternal()) return; // meta info entries are never listed
+        Vector groupEntries = (Vector) this.groupEntries.get(groupId);
+        if(groupEntries == null) {
+            groupEntries = new Vector();
+            this.groupEntries.put(groupId, groupEntries);
+        }
+        groupEntries.addElement(entry);
+    }
+    
+    private void removeFromGroupEntries(KdbEntry entry, int groupId) {
+        Vector groupEntries = (Vector) this.groupEntries.get(groupId);
+        if(groupEntries == null) return;
+        removeSame(groupEntries, entry);
+        if(groupEntries.isEmpty()) this.groupEntries.remove(groupId);
     }
     
     public void removeEntry(KdbEntry entry) {
         if(!isBackupEntry(entry)) backup(entry);
-        entries.removeElement(entry);
+        removeSame(entries, entry);
+        unindexEntry(entry);
+        removeFromGroupEntries(entry, entry.getGroupId());
+        ((KdbEntryV1)entry).setDatabase(null);
         numEntries--;
         changed = true;
     }
     
+    private void unindexEntry(KdbEntry entry) {
+        byte[] id = entry.getId();
+        if(!UuidHashtable.isUuid(id) || entryIndex.get(id) != entry) return;
+        entryIndex.remove(id);
+        KdbEntry duplicate = super.getEntry(id); // another entry with the same id takes over
+        if(duplicate != null) entryIndex.put(id, duplicate);
+    }
+    
+    // groups and entries are equal by id, so duplicates must be found by identity
+    private static int indexOfSame(Vector items, Object item) {
+        for (int i = 0; i < items.size(); i++) {
+            if(items.elementAt(i) == item) return i;
+        }
+        return -1;
+    }
+    
+    private static void removeSame(Vector items, Object item) {
+        int index = indexOfSame(items, item);
+        if(index >= 0) items.removeElementAt(index);
+    }
+    
     public void setBackupGroup(KdbGroup group) {
         if(hasNewBackupFlag) {
             throw new IllegalStateException("backup group already exists");
         }
         ((KdbGroupV1)group).setInternalFlags(((KdbGroupV1)group).getInternalFlags() | 4096);
         hasNewBackupFlag = true;
+        backupGroup = null;
+    }
+    
+    protected KdbGroup getBackupGroup() {
+        // still valid, if it was not removed and not renamed (backup group identified by name)
+        if(backupGroup == null || getGroup(backupGroup.getId()) != backupGroup || !isBackupGroup(backupGroup)) {
+            backupGroup = super.getBackupGroup();
+        }
+        return backupGroup;
     }
     
     protected void backup(KdbEntry entry) {
@@ -436,8 +662,13 @@ public final class KeePassDatabaseV1 extends AbstractKeePassDatabase {
 
     public void close() {
         super.close();
+        groupTree.clear();
+        backupGroup = null;
+        entryIndex.clear();
+        groupEntries.clear();
         ByteArrays.fillCompletelyWith(this.masterPasswordEncrypted, (byte)0);
         ByteArrays.fillCompletelyWith(this.keyFileEncrypted, (byte)0);
+        clearTransformedKey();
         
         ByteArrays.fillCompletelyWith(this.masterSeed, (byte)0);
         ByteArrays.fillCompletelyWith(this.encryptionIV, (byte)0);
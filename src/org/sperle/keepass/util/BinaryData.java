@@ -157,6 +157,54 @@ public class BinaryData {
         }
     }
     
+    /**
+     * Returns the number of bytes of the UTF-8 encoded String (without terminator). In
+     * contrast to getLength(String), the String is not encoded to measure it.
+     */
+    public static int getUtf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c < 0x80) length += 1;
+            else if(c < 0x800) length += 2;
+            else if(isSurrogate(c)) return getLength(s) - 1; // let the platform encode supplementary chars
+            else length += 3;
+        }
+        return length;
+    }
+    
+    /**
+     * Writes the String UTF-8 encoded and terminated directly into binary data.
+     * 
+     * @return the offset behind the written String
+     */
+    public static int writeString(String s, byte[] data, int offset) {
+        int start = offset;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c < 0x80) {
+                data[offset++] = (byte)c;
+            } else if(c < 0x800) {
+                data[offset++] = (byte)(0xC0 | (c >> 6));
+                data[offset++] = (byte)(0x80 | (c & 0x3F));
+            } else if(isSurrogate(c)) { // let the platform encode supplementary chars
+                byte[] encoded = fromString(s);
+                System.arraycopy(encoded, 0, data, start, encoded.length);
+                return start + encoded.length;
+            } else {
+                data[offset++] = (byte)(0xE0 | (c >> 12));
+                data[offset++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                data[offset++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+        data[offset++] = STRING_TERMINATOR;
+        return offset;
+    }
+    
+    private static boolean isSurrogate(char c) {
+        return c >= 0xD800 && c <= 0xDFFF;
+    }
+    
     /**
      * Returns the length of a String in bytes (!) that is stored inside binary data. Attention: this can differ from
      * the number of chars, because in UTF-8 it is possible, that a char needs more than one byte (Umlaute)!
@@ -0,0 +1,131 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package org.sperle.keepass.util;
+
+/**
+ * A bounded ring of byte blocks that is filled by one producer thread and read
+ * in order by a fixed number of consumer threads. A block is only reused after
+ * all consumers have released it, so every consumer sees every block without
+ * copying and the consumers can trail the producer by at most the number of
+ * blocks in the ring.
+ */
+public final class BlockPipeline {
+    private final byte[][] blocks;
+    private final int[] lengths;
+    private final int[] consumed;
+    
+    private int produced = 0;
+    private boolean finished = false;
+    private boolean aborted = false;
+    
+    public BlockPipeline(int numBlocks, int blockSize, int numConsumers) {
+        if(numBlocks < 1 || blockSize < 1 || numConsumers < 1) {
+            throw new IllegalArgumentException("pipeline needs at least one block and consumer");
+        }
+        this.blocks = new byte[numBlocks][blockSize];
+        this.lengths = new int[numBlocks];
+        this.consumed = new int[numConsumers];
+    }
+    
+    /**
+     * Returns the next block the producer can fill. Waits until all consumers
+     * have released this block. Returns null, if the pipeline was aborted.
+     */
+    public synchronized byte[] nextFreeBlock() throws InterruptedException {
+        while(!aborted && produced - getMinConsumed() >= blocks.length) wait();
+        if(aborted) return null;
+        return blocks[produced % blocks.length];
+    }
+    
+    /**
+     * Hands the block returned by nextFreeBlock() over to the consumers.
+     */
+    public synchronized void publish(int length) {
+        if(finished) throw new IllegalStateException("pipeline already finished");
+        lengths[produced % blocks.length] = length;
+        produced++;
+        notifyAll();
+    }
+    
+    /**
+     * Signals the consumers that no more blocks will be published.
+     */
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+    
+    /**
+     * Stops the producer and all consumers as soon as possible.
+     */
+    public synchronized void abort() {
+        aborted = true;
+        notifyAll();
+    }
+    
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+    
+    /**
+     * Returns the index of the next block for the given consumer. Waits until a
+     * block is published. Returns -1, if all blocks were consumed or the
+     * pipeline was aborted.
+     */
+    public synchronized int take(int consumer) throws InterruptedException {
+        while(!aborted && !finished && consumed[consumer] == produced) wait();
+        if(aborted || consumed[consumer] == produced) return -1;
+        return consumed[consumer] % blocks.length;
+    }
+    
+    public byte[] getBlock(int index) {
+        return blocks[index];
+    }
+    
+    public synchronized int getLength(int index) {
+        return lengths[index];
+    }
+    
+    /**
+     * Releases the block the given consumer got with the last call of take().
+     */
+    public synchronized void release(int consumer) {
+        consumed[consumer]++;
+        notifyAll();
+    }
+    
+    /**
+     * Deletes the content of all blocks.
+     */
+    public synchronized void wipe() {
+        for (int i = 0; i < blocks.length; i++) {
+            ByteArrays.fillCompletelyWith(blocks[i], (byte)0);
+        }
+    }
+    
+    private int getMinConsumed() {
+        int min = consumed[0];
+        for (int i = 1; i < consumed.length; i++) {
+            if(consumed[i] < min) min = consumed[i];
+        }
+        return min;
+    }
+}
@@ -173,4 +173,21 @@ public class ByteArrays {
             }
         }
     }
+    
+    /**
+     * Fills a section of a byte array with the given value.
+     * 
+     * @param target byte array to fill
+     * @param offset where the section to fill starts
+     * @param length of the section to fill
+     * @param with byte value to fill with
+     */
+    public static void fillWith(byte[] target, int offset, int length, byte with) {
+        if (offset + length > target.length) {
+            throw new IllegalArgumentException("array index out of bound");
+        }
+        for (int i = offset; i < offset + length; i++) {
+            target[i] = with;
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.util;
+
+/**
+ * A hash table that maps primitive int keys to objects without boxing. The
+ * keys are stored in open addressing with linear probing, so a lookup only
+ * touches two arrays and does not allocate anything. Values must not be null.
+ */
+public final class IntHashtable {
+    private static final int MIN_CAPACITY = 16;
+    
+    private int[] keys;
+    private Object[] values; // null marks a free slot
+    private int size = 0;
+    
+    public IntHashtable() {
+        this(MIN_CAPACITY);
+    }
+    
+    /**
+     * @param expectedSize number of keys the table can hold without resizing
+     */
+    public IntHashtable(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while(capacity < expectedSize * 2) capacity <<= 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public Object get(int key) {
+        int mask = keys.length - 1;
+        for (int i = indexFor(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if(keys[i] == key) return values[i];
+        }
+        return null;
+    }
+    
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+    
+    /**
+     * Maps the key to the value and returns the previous value of the key (or null).
+     */
+    public Object put(int key, Object value) {
+        if(value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        int mask = keys.length - 1;
+        int i = indexFor(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                Object previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if(++size * 2 > keys.length) resize(keys.length << 1); // keeps probe sequences short
+        return null;
+    }
+    
+    /**
+     * Removes the key and returns its value (or null, if the key was not mapped).
+     */
+    public Object remove(int key) {
+        int mask = keys.length - 1;
+        int i = indexFor(key, mask);
+        while(values[i] != null && keys[i] != key) i = (i + 1) & mask;
+        if(values[i] == null) return null;
+        
+        Object removed = values[i];
+        values[i] = null;
+        size--;
+        // shift back the following keys of the probe sequence, so no tombstones are needed
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = indexFor(keys[j], mask);
+            if(((j - home) & mask) >= ((j - i) & mask)) { // free slot lies between home and j
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+        return removed;
+    }
+    
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+        size = 0;
+    }
+    
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if(oldValues[i] != null) {
+                int j = indexFor(oldKeys[i], mask);
+                while(values[j] != null) j = (j + 1) & mask;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+    
+    private static int indexFor(int key, int mask) {
+        int h = key * 0x9E3779B9; // spreads sequential and random ids evenly
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
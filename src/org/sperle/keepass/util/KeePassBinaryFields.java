@@ -35,6 +35,13 @@ public class KeePassBinaryFields {
     public static final int GROUP_TERMINATOR = 0xFFFF;
     public static final int ENTRY_TERMINATOR = 0xFFFF;
     
+    // lengths of complete fields (field type + field size + data)
+    public static final int FIELDHEADER_LENGTH = 6;
+    public static final int INTEGER_FIELD_LENGTH = FIELDHEADER_LENGTH + INTEGER_FIELDSIZE;
+    public static final int UNSIGNED_SHORT_FIELD_LENGTH = FIELDHEADER_LENGTH + UNSIGNED_SHORT_FIELDSIZE;
+    public static final int DATE_FIELD_LENGTH = FIELDHEADER_LENGTH + DATE_FIELDSIZE;
+    public static final int TERMINATOR_FIELD_LENGTH = FIELDHEADER_LENGTH + TERMINATOR_FIELDSIZE;
+    
     /**
      * Converts an integer into a KeePass binary field array.
      */
@@ -108,6 +115,82 @@ public class KeePassBinaryFields {
         return ByteArrays.append(field, value);
     }
     
+    /**
+     * Returns the length of the KeePass binary field for the given String.
+     */
+    public static int getStringFieldLength(String value) {
+        return FIELDHEADER_LENGTH + BinaryData.getUtf8Length(value) + 1;
+    }
+    
+    /**
+     * Writes an integer as KeePass binary field directly into binary data and returns the offset behind it.
+     */
+    public static int writeInt(int type, int value, byte[] data, int offset) {
+        offset = writeFieldHeader(type, INTEGER_FIELDSIZE, data, offset);
+        BinaryData.fromInt(value, data, offset);
+        return offset + INTEGER_FIELDSIZE;
+    }
+    
+    /**
+     * Writes an unsigned short as KeePass binary field directly into binary data and returns the offset behind it.
+     */
+    public static int writeUnsignedShort(int type, int value, byte[] data, int offset) {
+        offset = writeFieldHeader(type, UNSIGNED_SHORT_FIELDSIZE, data, offset);
+        BinaryData.fromUnsignedShort(value, data, offset);
+        return offset + UNSIGNED_SHORT_FIELDSIZE;
+    }
+    
+    /**
+     * Writes a String as KeePass binary field directly into binary data and returns the offset behind it.
+     */
+    public static int writeString(int type, String value, byte[] data, int offset) {
+        int end = BinaryData.writeString(value, data, offset + FIELDHEADER_LENGTH);
+        writeFieldHeader(type, end - offset - FIELDHEADER_LENGTH, data, offset);
+        return end;
+    }
+    
+    /**
+     * Writes a password as KeePass binary field directly into binary data and returns the offset behind it.
+     */
+    public static int writePassword(int type, byte[] value, byte[] data, int offset) {
+        offset = writeFieldHeader(type, value.length + 1, data, offset); // + 1 -> with String terminator
+        System.arraycopy(value, 0, data, offset, value.length);
+        data[offset + value.length] = BinaryData.STRING_TERMINATOR;
+        return offset + value.length + 1;
+    }
+    
+    /**
+     * Writes a date as KeePass binary field directly into binary data and returns the offset behind it.
+     */
+    public static int writeDate(int type, KdbDate value, byte[] data, int offset) {
+        offset = writeFieldHeader(type, DATE_FIELDSIZE, data, offset);
+        value.toBinaryData(data, offset);
+        return offset + DATE_FIELDSIZE;
+    }
+    
+    /**
+     * Writes binary data as KeePass binary field directly into binary data and returns the offset behind it.
+     */
+    public static int writeByteArray(int type, byte[] value, byte[] data, int offset) {
+        offset = writeFieldHeader(type, value.length, data, offset);
+        System.arraycopy(value, 0, data, offset, value.length);
+        return offset + value.length;
+    }
+    
+    /**
+     * Writes the given terminator field (GROUP_TERMINATOR or ENTRY_TERMINATOR) directly into binary data
+     * and returns the offset behind it.
+     */
+    public static int writeTerminator(int terminator, byte[] data, int offset) {
+        return writeFieldHeader(terminator, TERMINATOR_FIELDSIZE, data, offset);
+    }
+    
+    private static int writeFieldHeader(int type, int size, byte[] data, int offset) {
+        BinaryData.fromUnsignedShort(type, data, offset);
+        BinaryData.fromInt(size, data, offset + 2);
+        return offset + FIELDHEADER_LENGTH;
+    }
+    
     /**
      * Returns the KeePass binary field array that terminates the group field.
      */
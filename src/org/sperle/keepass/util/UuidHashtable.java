@@ -0,0 +1,171 @@
+/*
+    Copyright (c) 2009-2010 Christoph Sperle <keepassmobile@gmail.com>
+    
+    This file is part of KeePassMobile.
+
+    KeePassMobile is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    KeePassMobile is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with KeePassMobile.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package org.sperle.keepass.util;
+
+/**
+ * A hash table that maps 16 byte UUIDs to objects. Every key is stored as two
+ * longs in open addressing with linear probing (like IntHashtable), so neither
+ * the keys nor a lookup need a byte array wrapper. Values must not be null.
+ */
+public final class UuidHashtable {
+    public static final int UUID_LENGTH = 16;
+    private static final int MIN_CAPACITY = 16;
+    
+    private long[] highs;
+    private long[] lows;
+    private Object[] values; // null marks a free slot
+    private int size = 0;
+    
+    public UuidHashtable() {
+        this(MIN_CAPACITY);
+    }
+    
+    /**
+     * @param expectedSize number of keys the table can hold without resizing
+     */
+    public UuidHashtable(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while(capacity < expectedSize * 2) capacity <<= 1;
+        allocate(capacity);
+    }
+    
+    /**
+     * Returns true, if the given id can be used as key.
+     */
+    public static boolean isUuid(byte[] id) {
+        return id != null && id.length == UUID_LENGTH;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public Object get(byte[] uuid) {
+        long high = toLong(uuid, 0), low = toLong(uuid, 8);
+        int mask = values.length - 1;
+        for (int i = indexFor(high, low, mask); values[i] != null; i = (i + 1) & mask) {
+            if(highs[i] == high && lows[i] == low) return values[i];
+        }
+        return null;
+    }
+    
+    public boolean containsKey(byte[] uuid) {
+        return get(uuid) != null;
+    }
+    
+    /**
+     * Maps the UUID to the value and returns the previous value of the UUID (or null).
+     */
+    public Object put(byte[] uuid, Object value) {
+        if(value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        long high = toLong(uuid, 0), low = toLong(uuid, 8);
+        int mask = values.length - 1;
+        int i = indexFor(high, low, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if(highs[i] == high && lows[i] == low) {
+                Object previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        highs[i] = high;
+        lows[i] = low;
+        values[i] = value;
+        if(++size * 2 > values.length) resize(values.length << 1); // keeps probe sequences short
+        return null;
+    }
+    
+    /**
+     * Removes the UUID and returns its value (or null, if the UUID was not mapped).
+     */
+    public Object remove(byte[] uuid) {
+        long high = toLong(uuid, 0), low = toLong(uuid, 8);
+        int mask = values.length - 1;
+        int i = indexFor(high, low, mask);
+        while(values[i] != null && (highs[i] != high || lows[i] != low)) i = (i + 1) & mask;
+        if(values[i] == null) return null;
+        
+        Object removed = values[i];
+        values[i] = null;
+        size--;
+        // shift back the following keys of the probe sequence, so no tombstones are needed
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = indexFor(highs[j], lows[j], mask);
+            if(((j - home) & mask) >= ((j - i) & mask)) { // free slot lies between home and j
+                highs[i] = highs[j];
+                lows[i] = lows[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+        return removed;
+    }
+    
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+        size = 0;
+    }
+    
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        values = new Object[capacity];
+    }
+    
+    private void resize(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if(oldValues[i] != null) {
+                int j = indexFor(oldHighs[i], oldLows[i], mask);
+                while(values[j] != null) j = (j + 1) & mask;
+                highs[j] = oldHighs[i];
+                lows[j] = oldLows[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+    
+    private static long toLong(byte[] uuid, int offset) {
+        if(uuid.length != UUID_LENGTH) {
+            throw new IllegalArgumentException("UUID must have " + UUID_LENGTH + " bytes");
+        }
+        long l = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            l = (l << 8) | (uuid[i] & 0xff);
+        }
+        return l;
+    }
+    
+    private static int indexFor(long high, long low, int mask) {
+        long h = (high ^ low) * 0x9E3779B97F4A7C15L; // spreads random and sequential ids evenly
+        return ((int)(h >>> 32) ^ (int)h) & mask;
+    }
+}
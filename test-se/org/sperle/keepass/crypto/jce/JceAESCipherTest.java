@@ -0,0 +1,108 @@
+package org.sperle.keepass.crypto.jce;
+
+import junit.framework.TestCase;
+
+import org.sperle.keepass.crypto.CryptoManager;
+import org.sperle.keepass.crypto.KdbCipherSession;
+import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+public class JceAESCipherTest extends TestCase {
+    private static final byte[] KEY = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+        17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32};
+    private static final byte[] IV = new byte[] {16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+    
+    private JceAESCipher jce;
+    private AESCipher bc;
+    private byte[] plainText;
+    
+    protected void setUp() throws Exception {
+        jce = new JceAESCipher();
+        bc = new AESCipher();
+        plainText = new byte[200000 + 5];
+        for (int i = 0; i < plainText.length; i++) {
+            plainText[i] = (byte)(i * 7);
+        }
+    }
+    
+    public void testEncryptLikeBouncyCastle() throws Exception {
+        assertEquals(bc.getName(), jce.getName());
+        byte[] expected = bc.encrypt(KEY, plainText, IV, 1, true, null);
+        assertTrue(ByteArrays.equals(expected, jce.encrypt(KEY, plainText, IV, 1, true, null)));
+        assertTrue(ByteArrays.equals(expected, jce.encrypt(KEY, plainText, IV, 1, true, new ProgressMonitor())));
+    }
+    
+    public void testKeyTransformLikeBouncyCastle() throws Exception {
+        int[] rounds = new int[] {0, 1, 2, 6000};
+        for (int i = 0; i < rounds.length; i++) {
+            assertTrue(ByteArrays.equals(bc.encrypt(IV, KEY, null, rounds[i], false, null), 
+                    jce.encrypt(IV, KEY, null, rounds[i], false, new ProgressMonitor())));
+        }
+    }
+    
+    public void testDecrypt() throws Exception {
+        byte[] encrypted = bc.encrypt(KEY, plainText, IV, 1, true, null);
+        ProgressMonitor pm = new ProgressMonitor();
+        assertTrue(ByteArrays.equals(plainText, jce.decrypt(KEY, encrypted, IV, pm)));
+        assertEquals(100, pm.getProgress());
+    }
+    
+    public void testDecryptInPlace() throws Exception {
+        byte[] encrypted = bc.encrypt(KEY, plainText, IV, 1, true, null);
+        byte[] data = new byte[124 + encrypted.length]; // encrypted content behind a header
+        ByteArrays.copyCompletelyTo(encrypted, data, 124);
+        ProgressMonitor pm = new ProgressMonitor();
+        int length = jce.decrypt(KEY, data, 124, encrypted.length, IV, data, 124, pm);
+        assertEquals(plainText.length, length);
+        byte[] decrypted = new byte[length];
+        ByteArrays.fillCompletelyFrom(data, 124, decrypted);
+        assertTrue(ByteArrays.equals(plainText, decrypted));
+        assertEquals(100, pm.getProgress());
+    }
+    
+    public void testDecryptWrongKey() throws Exception {
+        byte[] encrypted = jce.encrypt(KEY, plainText, IV, 1, true, null);
+        byte[] wrongKey = ByteArrays.returnCopy(KEY);
+        wrongKey[0]++;
+        try {
+            jce.decrypt(wrongKey, encrypted, IV, null);
+            fail("Should fail with KeePassCryptoException");
+        } catch (KeePassCryptoException e) {
+            // OK
+        }
+    }
+    
+    public void testCancel() throws Exception {
+        ProgressMonitor pm = new ProgressMonitor();
+        pm.cancel();
+        assertNull(jce.decrypt(KEY, bc.encrypt(KEY, plainText, IV, 1, true, null), IV, pm));
+    }
+    
+    public void testSessions() throws Exception {
+        KdbCipherSession encryption = jce.startEncryption(KEY, IV);
+        byte[] encrypted = new byte[plainText.length + 16];
+        int length = 0;
+        for (int offset = 0; offset < plainText.length; offset += 4096) {
+            length += encryption.update(plainText, offset, Math.min(4096, plainText.length - offset), encrypted, length);
+        }
+        length += encryption.doFinal(encrypted, length);
+        assertTrue(ByteArrays.equals(bc.encrypt(KEY, plainText, IV, 1, true, null), ByteArrays.cut(encrypted, length)));
+        
+        KdbCipherSession decryption = jce.startDecryption(KEY, IV);
+        byte[] decrypted = new byte[decryption.getUpdateOutputSize(length) + 16];
+        int plainLength = decryption.update(encrypted, 0, length, decrypted, 0);
+        plainLength += decryption.doFinal(decrypted, plainLength);
+        assertTrue(ByteArrays.equals(plainText, ByteArrays.cut(decrypted, plainLength)));
+    }
+    
+    public void testSelectedByCryptoManager() throws Exception {
+        CryptoManager cm = new CryptoManager(null);
+        cm.addKdbCipher(bc);
+        cm.addKdbCipher(jce);
+        assertNotNull(cm.getKdbCipher(JceAESCipher.NAME));
+        assertTrue(cm.getThroughput(jce) > 0); // passed known answer test
+        assertTrue(cm.getThroughput(bc) > 0);
+    }
+}
@@ -0,0 +1,51 @@
+package org.sperle.keepass.crypto.jce;
+
+import junit.framework.TestCase;
+
+import org.sperle.keepass.crypto.CryptoManager;
+import org.sperle.keepass.crypto.bc.AESKeyTransform;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+public class JceAESKeyTransformTest extends TestCase {
+    private static final byte[] SEED = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+        17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32};
+    private static final byte[] KEY = new byte[] {32, 31, 30, 29, 28, 27, 26, 25, 24, 23, 22, 21, 20, 19, 18, 17,
+        16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+    
+    public void testTransformLikeBouncyCastle() throws Exception {
+        JceAESKeyTransform jce = new JceAESKeyTransform();
+        AESKeyTransform bc = new AESKeyTransform(false);
+        assertEquals(bc.getName(), jce.getName());
+        int[] rounds = new int[] {0, 1, 2, 6000, JceAESKeyTransform.PROGRESS_INTERVAL * 2 + 1};
+        for (int i = 0; i < rounds.length; i++) {
+            ProgressMonitor pm = new ProgressMonitor();
+            assertTrue(ByteArrays.equals(bc.transform(SEED, KEY, rounds[i], null), jce.transform(SEED, KEY, rounds[i], pm)));
+            assertEquals(100, pm.getProgress());
+        }
+    }
+    
+    public void testCancel() throws Exception {
+        ProgressMonitor pm = new ProgressMonitor();
+        pm.cancel();
+        assertNull(new JceAESKeyTransform().transform(SEED, KEY, 6000, pm));
+    }
+    
+    public void testInvalidKeyLength() throws Exception {
+        try {
+            new JceAESKeyTransform().transform(SEED, new byte[20], 10, null);
+            fail("Should fail with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+    
+    public void testSelectedByCryptoManager() throws Exception {
+        CryptoManager cm = new CryptoManager(null);
+        JceAESKeyTransform jce = new JceAESKeyTransform();
+        cm.addKeyTransform(new AESKeyTransform());
+        cm.addKeyTransform(jce);
+        assertNotNull(cm.getKeyTransform(JceAESKeyTransform.NAME));
+        assertTrue(cm.getThroughput(jce) > 0); // passed known answer test
+    }
+}
@@ -0,0 +1,53 @@
+package org.sperle.keepass.crypto.jce;
+
+import junit.framework.TestCase;
+
+import org.sperle.keepass.crypto.CryptoManager;
+import org.sperle.keepass.crypto.HashSession;
+import org.sperle.keepass.crypto.bc.SHA256Hash;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+public class JceSHA256HashTest extends TestCase {
+    private byte[] message;
+    
+    protected void setUp() throws Exception {
+        message = new byte[150000 + 3];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte)(i * 13);
+        }
+    }
+    
+    public void testHashLikeBouncyCastle() throws Exception {
+        JceSHA256Hash jce = new JceSHA256Hash();
+        SHA256Hash bc = new SHA256Hash();
+        assertEquals(bc.getName(), jce.getName());
+        byte[][] messages = new byte[][] {message, new byte[0], new byte[] {1, 2, 3}};
+        ProgressMonitor pm = new ProgressMonitor();
+        assertTrue(ByteArrays.equals(bc.getHash(messages, null), jce.getHash(messages, pm)));
+        assertEquals(100, pm.getProgress());
+    }
+    
+    public void testSession() throws Exception {
+        HashSession session = new JceSHA256Hash().startHash();
+        for (int offset = 0; offset < message.length; offset += 1000) {
+            session.update(message, offset, Math.min(1000, message.length - offset));
+        }
+        assertTrue(ByteArrays.equals(new SHA256Hash().getHash(new byte[][] {message}, null), session.doFinal()));
+    }
+    
+    public void testCancel() throws Exception {
+        ProgressMonitor pm = new ProgressMonitor();
+        pm.cancel();
+        assertNull(new JceSHA256Hash().getHash(new byte[][] {message}, pm));
+    }
+    
+    public void testSelectedByCryptoManager() throws Exception {
+        CryptoManager cm = new CryptoManager(null);
+        JceSHA256Hash jce = new JceSHA256Hash();
+        cm.addHash(new SHA256Hash());
+        cm.addHash(jce);
+        assertNotNull(cm.getHash(JceSHA256Hash.NAME));
+        assertTrue(cm.getThroughput(jce) > 0); // passed known answer test
+    }
+}
@@ -0,0 +1,152 @@
+package org.sperle.keepass.io.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.sperle.keepass.crypto.CryptoManager;
+import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.crypto.bc.RC4Cipher;
+import org.sperle.keepass.crypto.bc.SHA256Hash;
+import org.sperle.keepass.io.SaveSession;
+import org.sperle.keepass.kdb.DoNothingOnCloseStrategy;
+import org.sperle.keepass.kdb.KdbEntry;
+import org.sperle.keepass.kdb.KdbGroup;
+import org.sperle.keepass.kdb.v1.KeePassDatabaseAESCryptoAlgorithmV1;
+import org.sperle.keepass.kdb.v1.KeePassDatabaseManagerV1;
+import org.sperle.keepass.kdb.v1.KeePassDatabaseV1;
+import org.sperle.keepass.rand.JdkRandom;
+import org.sperle.keepass.util.ByteArrays;
+
+public class NioIOManagerTest extends TestCase {
+    private static final String TEST_DB = "/org/sperle/keepass/kdb/v1/testpass.kdb";
+    private static final String TEST_PASSWORD = "ÖÄÜöäüß_@!\"§$%&/()[]=*\\n";
+    
+    private NioIOManager io;
+    private File dir;
+    private String testDb;
+    
+    protected void setUp() throws Exception {
+        io = new NioIOManager();
+        dir = File.createTempFile("nioiomanagertest", "");
+        dir.delete();
+        dir.mkdir();
+        testDb = new File(dir, "testpass.kdb").getPath();
+        io.saveBinary(testDb, loadResource(TEST_DB), null);
+    }
+    
+    protected void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+    
+    public void testLoadBinary() throws Exception {
+        assertTrue(ByteArrays.equals(loadResource(TEST_DB), io.loadBinary(testDb, null)));
+        assertEquals(2572, io.getFileSize(testDb));
+    }
+    
+    public void testOpenInputStream() throws Exception {
+        InputStream is = io.openInputStream(testDb);
+        byte[] file = new byte[(int)io.getFileSize(testDb)];
+        assertEquals(0x03, is.read()); // first byte of signature
+        assertEquals(file.length - 1, is.available());
+        assertEquals(file.length - 1, is.read(file, 1, file.length - 1));
+        assertEquals(-1, is.read(file, 0, file.length));
+        is.close();
+        file[0] = (byte)0x03;
+        assertTrue(ByteArrays.equals(loadResource(TEST_DB), file));
+    }
+    
+    public void testSaveBinary() throws Exception {
+        String file = new File(dir, "saved.kdb").getPath();
+        io.saveBinary(file, new byte[] {1,2,3}, null);
+        assertTrue(ByteArrays.equals(new byte[] {1,2,3}, io.loadBinary(file, null)));
+        io.saveBinary(file, new byte[] {4,5}, null);
+        assertTrue(ByteArrays.equals(new byte[] {4,5}, io.loadBinary(file, null)));
+        assertEquals(2, dir.listFiles().length); // no temp file left
+    }
+    
+    public void testSaveBinaryFailureKeepsOriginal() throws Exception {
+        try {
+            io.saveBinary(testDb, null, null);
+            fail("Should fail with NullPointerException");
+        } catch (NullPointerException e) {/* OK */}
+        assertTrue(ByteArrays.equals(loadResource(TEST_DB), io.loadBinary(testDb, null)));
+        assertEquals(1, dir.listFiles().length); // no temp file left
+    }
+    
+    public void testSaveSession() throws Exception {
+        SaveSession out = io.startSave(testDb);
+        out.write(new byte[4], 0, 4); // reserved
+        out.write(new byte[] {9, 5, 6, 7, 9}, 1, 3);
+        out.overwrite(0, new byte[] {1, 2, 3, 4}, 0, 4);
+        out.write(new byte[] {8}, 0, 1);
+        assertTrue(ByteArrays.equals(loadResource(TEST_DB), io.loadBinary(testDb, null))); // not replaced yet
+        out.commit();
+        out.abort(); // no effect after commit
+        assertTrue(ByteArrays.equals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, io.loadBinary(testDb, null)));
+        assertEquals(1, dir.listFiles().length);
+    }
+    
+    public void testSaveSessionAbortKeepsOriginal() throws Exception {
+        SaveSession out = io.startSave(testDb);
+        out.write(new byte[] {1, 2, 3}, 0, 3);
+        try {
+            out.overwrite(2, new byte[] {1, 2}, 0, 2);
+            fail("Should fail with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {/* OK */}
+        out.abort();
+        assertTrue(ByteArrays.equals(loadResource(TEST_DB), io.loadBinary(testDb, null)));
+        assertEquals(1, dir.listFiles().length); // no temp file left
+    }
+    
+    public void testEqualsAndDelete() throws Exception {
+        String copy = new File(dir, "copy.kdb").getPath();
+        io.saveBinary(copy, io.loadBinary(testDb, null), null);
+        assertTrue(io.equals(testDb, copy));
+        io.saveBinary(copy, new byte[] {1}, null);
+        assertFalse(io.equals(testDb, copy));
+        io.delete(copy);
+        assertFalse(io.exists(copy));
+    }
+    
+    public void testLoadDatabaseStreaming() throws Exception {
+        CryptoManager cm = new CryptoManager(new JdkRandom());
+        cm.addHash(new SHA256Hash());
+        cm.addKdbCipher(new AESCipher());
+        cm.addPasswordCipher(new RC4Cipher());
+        KeePassDatabaseManagerV1 dm = new KeePassDatabaseManagerV1(io, cm, new DoNothingOnCloseStrategy(), new JdkRandom());
+        dm.registerCryptoAlgorithm(new KeePassDatabaseAESCryptoAlgorithmV1(cm));
+        dm.setLoadMode(KeePassDatabaseManagerV1.LOAD_MODE_STREAMING);
+        
+        KeePassDatabaseV1 db = (KeePassDatabaseV1)dm.load(testDb, TEST_PASSWORD, null, false, null);
+        assertEquals(8, db.getGroups().size());
+        assertEquals(5, db.getEntries().size());
+        
+        db.createEntry((KdbGroup)db.getGroups().elementAt(0)).setTitle("Saved with NIO");
+        assertTrue(dm.save(db, testDb, null));
+        db = (KeePassDatabaseV1)dm.load(testDb, TEST_PASSWORD, null, false, null);
+        assertEquals(6, db.getEntries().size());
+        assertEquals("Saved with NIO", ((KdbEntry)db.getEntries().lastElement()).getTitle());
+    }
+    
+    private byte[] loadResource(String name) throws IOException {
+        InputStream is = getClass().getResourceAsStream(name);
+        try {
+            byte[] data = new byte[0];
+            byte[] buf = new byte[1024];
+            int read;
+            while((read = is.read(buf)) > -1) {
+                data = ByteArrays.append(data, buf, 0, read);
+            }
+            return data;
+        } finally {
+            is.close();
+        }
+    }
+}
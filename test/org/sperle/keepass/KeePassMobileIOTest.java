@@ -1,11 +1,12 @@
 package org.sperle.keepass;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Hashtable;
 
-import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.sperle.keepass.io.IOManager;
+import org.sperle.keepass.io.SaveSession;
 import org.sperle.keepass.kdb.v1.KeePassDatabaseManagerV1Test;
 import org.sperle.keepass.monitor.ProgressMonitor;
 import org.sperle.keepass.util.ByteArrays;
@@ -28,7 +29,7 @@ public abstract class KeePassMobileIOTest extends TestCase {
 
         public byte[] loadBinary(String filename, ProgressMonitor pm) throws IOException {
             if(savedFiles.containsKey(filename)) {
-                return (byte[])savedFiles.get(filename);
+                return ByteArrays.returnCopy((byte[])savedFiles.get(filename));
             } else {
                 InputStream is = null;
                 byte buf[] = null;
@@ -46,10 +47,46 @@ public abstract class KeePassMobileIOTest extends TestCase {
             }
         }
         
+        public InputStream openInputStream(String filename) throws IOException {
+            return new ByteArrayInputStream(loadBinary(filename, null));
+        }
+        
         public void saveBinary(String filename, byte[] binary, ProgressMonitor pm) throws IOException {
             savedFiles.put(filename, ByteArrays.returnCopy(binary));
         }
         
+        public SaveSession startSave(final String filename) throws IOException {
+            return new SaveSession() {
+                private byte[] file = new byte[0];
+                private boolean finished = false;
+                
+                public void write(byte[] data, int offset, int length) throws IOException {
+                    if(finished) throw new IllegalStateException("save session already finished");
+                    byte[] part = new byte[length];
+                    System.arraycopy(data, offset, part, 0, length);
+                    file = ByteArrays.append(file, part);
+                }
+                
+                public void overwrite(long position, byte[] data, int offset, int length) throws IOException {
+                    if(finished) throw new IllegalStateException("save session already finished");
+                    if(position < 0 || position + length > file.length) {
+                        throw new IllegalArgumentException("can only overwrite data that has been written");
+                    }
+                    System.arraycopy(data, offset, file, (int)position, length);
+                }
+                
+                public void commit() throws IOException {
+                    if(finished) throw new IllegalStateException("save session already finished");
+                    savedFiles.put(filename, file);
+                    finished = true;
+                }
+                
+                public void abort() {
+                    finished = true;
+                }
+            };
+        }
+        
         public void delete(String filename) throws IOException {
             savedFiles.remove(filename);
         }
@@ -59,6 +96,9 @@ public abstract class KeePassMobileIOTest extends TestCase {
         }
 
         public long getFileSize(String filename) throws IOException {
+            if(savedFiles.containsKey(filename)) {
+                return ((byte[])savedFiles.get(filename)).length;
+            }
             long size = -1;
             InputStream is = null;
             try {
@@ -69,24 +109,5 @@ public abstract class KeePassMobileIOTest extends TestCase {
             }
             return size;
         }
-
-        public byte[] generateHash(String filename, int packetSize) throws IOException {
-            InputStream is = null;
-            byte[] hash = null;
-            try {
-                is = KeePassDatabaseManagerV1Test.class.getResourceAsStream(filename);
-                byte[] buf = new byte[packetSize];
-                int read = -1;
-                SHA256Digest md = new SHA256Digest();
-                while((read = is.read(buf)) > -1) {
-                    md.update(buf, 0, read, null);
-                }
-                hash = new byte[md.getDigestSize()];
-                md.doFinal(hash, 0);
-            } finally {
-                try {if(is != null) is.close();} catch (IOException e) {}
-            }
-            return hash;
-        }
     }
 }
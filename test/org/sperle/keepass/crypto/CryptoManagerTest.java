@@ -2,8 +2,10 @@ package org.sperle.keepass.crypto;
 
 import org.sperle.keepass.KeePassMobileIOTest;
 import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.crypto.bc.AESKeyTransform;
 import org.sperle.keepass.crypto.bc.RC4Cipher;
 import org.sperle.keepass.crypto.bc.SHA256Hash;
+import org.sperle.keepass.monitor.ProgressMonitor;
 import org.sperle.keepass.rand.JdkRandom;
 import org.sperle.keepass.util.ByteArrays;
 import org.sperle.keepass.util.Passwords;
@@ -13,7 +15,7 @@ public class CryptoManagerTest extends KeePassMobileIOTest {
     private CryptoManager cm;
     
     public CryptoManagerTest() {
-        super(3, "CryptoManagerTest");
+        super(5, "CryptoManagerTest");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -21,6 +23,8 @@ public class CryptoManagerTest extends KeePassMobileIOTest {
         case 0:testHashFunctions();break;
         case 1:testBlockCipher();break;
         case 2:testPasswordCipher();break;
+        case 3:testKeyTransform();break;
+        case 4:testSelectFastestCorrectImplementation();break;
         default:break;
         }
     }
@@ -59,4 +63,48 @@ public class CryptoManagerTest extends KeePassMobileIOTest {
         byte[] encryptedPassword = passwordCipher.encrypt(password);
         assertFalse(ByteArrays.equals(password, encryptedPassword));
     }
+    
+    public void testKeyTransform() {
+        assertNull(cm.getKeyTransform(AESKeyTransform.NAME));
+        cm.addKeyTransform(new AESKeyTransform());
+        assertNotNull(cm.getKeyTransform(AESKeyTransform.NAME));
+    }
+    
+    public void testSelectFastestCorrectImplementation() {
+        SHA256Hash sha256 = new SHA256Hash();
+        cm.addHash(sha256);
+        assertTrue(sha256 == cm.getHash(SHA256Hash.NAME));
+        assertEquals(-1, cm.getThroughput(sha256)); // only one implementation: not benchmarked
+        
+        Hash wrongHash = new Hash() { // faster, but wrong
+            public String getName() {
+                return SHA256Hash.NAME;
+            }
+            public byte[] getHash(byte[][] messages, ProgressMonitor pm) {
+                return new byte[32];
+            }
+            public HashSession startHash() {
+                return null;
+            }
+        };
+        cm.setBenchmarkTime(10);
+        cm.addHash(wrongHash);
+        assertTrue(sha256 == cm.getHash(SHA256Hash.NAME));
+        assertTrue(cm.getThroughput(sha256) > 0);
+        assertEquals(0, cm.getThroughput(wrongHash));
+        
+        AESCipher aes = new AESCipher();
+        AESCipher parallelAes = new AESCipher(2);
+        cm.addKdbCipher(aes);
+        cm.addKdbCipher(parallelAes);
+        assertNotNull(cm.getKdbCipher(AESCipher.NAME));
+        assertTrue(cm.getThroughput(aes) > 0);
+        assertTrue(cm.getThroughput(parallelAes) > 0);
+        
+        AESKeyTransform keyTransform = new AESKeyTransform(false);
+        cm.addKeyTransform(keyTransform);
+        cm.addKeyTransform(new AESKeyTransform(true));
+        assertNotNull(cm.getKeyTransform(AESKeyTransform.NAME));
+        assertTrue(cm.getThroughput(keyTransform) > 0);
+    }
 }
@@ -2,7 +2,10 @@ package org.sperle.keepass.crypto.bc;
 
 import org.bouncycastle.util.encoders.Hex;
 import org.sperle.keepass.KeePassMobileIOTest;
+import org.sperle.keepass.crypto.KdbCipherSession;
 import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
 
 public class AESCipherTest extends KeePassMobileIOTest {
     private static final String MASTER_PASSWORD = "0123456789abcdef0123456789abcdef";
@@ -11,12 +14,17 @@ public class AESCipherTest extends KeePassMobileIOTest {
     private AESCipher aes;
     
     public AESCipherTest() {
-        super(1, "AESCipherTest");
+        super(6, "AESCipherTest");
     }
 
     public void test(int testNumber) throws Throwable {
         switch (testNumber) {
         case 0:testAES();break;
+        case 1:testDecryptionSession();break;
+        case 2:testDecryptionSessionWrongKey();break;
+        case 3:testEncryptionSession();break;
+        case 4:testDecryptInPlace();break;
+        case 5:testParallelDecryption();break;
         default:break;
         }
     }
@@ -30,4 +38,89 @@ public class AESCipherTest extends KeePassMobileIOTest {
 	assertEquals(CIPHER_TEXT, new String(Hex.encode(cipherText)));
 	assertEquals(PLAIN_TEXT, new String(aes.decrypt(Hex.decode(MASTER_PASSWORD.getBytes()), cipherText, null, null)).trim());
     }
+    
+    public void testDecryptionSession() throws KeePassCryptoException {
+        byte[] key = Hex.decode(MASTER_PASSWORD.getBytes());
+        byte[] cipherText = Hex.decode(CIPHER_TEXT.getBytes());
+        KdbCipherSession session = aes.startDecryption(key, null);
+        byte[] plainText = new byte[cipherText.length];
+        int length = 0;
+        for (int i = 0; i < cipherText.length; i += 7) { // odd part size: not aligned to AES block size
+            int partLength = Math.min(7, cipherText.length - i);
+            assertTrue(session.getUpdateOutputSize(partLength) + length <= plainText.length);
+            length += session.update(cipherText, i, partLength, plainText, length);
+        }
+        length += session.doFinal(plainText, length);
+        assertEquals(PLAIN_TEXT, new String(plainText, 0, length));
+    }
+    
+    public void testDecryptionSessionWrongKey() throws KeePassCryptoException {
+        byte[] key = Hex.decode(MASTER_PASSWORD.getBytes());
+        key[0]++;
+        byte[] cipherText = Hex.decode(CIPHER_TEXT.getBytes());
+        KdbCipherSession session = aes.startDecryption(key, null);
+        byte[] plainText = new byte[cipherText.length];
+        int length = session.update(cipherText, 0, cipherText.length, plainText, 0);
+        try {
+            session.doFinal(plainText, length);
+            fail("Should fail with KeePassCryptoException");
+        } catch (KeePassCryptoException e) {
+            // OK: padding corrupt
+        }
+    }
+    
+    public void testEncryptionSession() throws KeePassCryptoException {
+        byte[] key = Hex.decode(MASTER_PASSWORD.getBytes());
+        byte[] plainText = PLAIN_TEXT.getBytes();
+        KdbCipherSession session = aes.startEncryption(key, null);
+        byte[] cipherText = new byte[plainText.length + 32];
+        int length = 0;
+        for (int i = 0; i < plainText.length; i += 7) { // odd part size: not aligned to AES block size
+            int partLength = Math.min(7, plainText.length - i);
+            length += session.update(plainText, i, partLength, cipherText, length);
+        }
+        length += session.doFinal(cipherText, length);
+        assertEquals(CIPHER_TEXT, new String(Hex.encode(ByteArrays.cut(cipherText, length))));
+    }
+    
+    public void testDecryptInPlace() throws KeePassCryptoException {
+        byte[] key = Hex.decode(MASTER_PASSWORD.getBytes());
+        byte[] cipherText = Hex.decode(CIPHER_TEXT.getBytes());
+        byte[] data = new byte[3 + cipherText.length]; // encrypted text behind a header
+        ByteArrays.copyCompletelyTo(cipherText, data, 3);
+        int length = aes.decrypt(key, data, 3, cipherText.length, null, data, 3, null);
+        assertEquals(PLAIN_TEXT, new String(data, 3, length));
+    }
+    
+    public void testParallelDecryption() throws KeePassCryptoException {
+        byte[] key = Hex.decode(MASTER_PASSWORD.getBytes());
+        byte[] iv = new byte[16];
+        iv[0] = 1;
+        byte[] plainText = new byte[3 * AESCipher.MIN_SEGMENT_LENGTH + 5]; // 3 segments, last one longer
+        for (int i = 0; i < plainText.length; i++) {
+            plainText[i] = (byte)(i * 7);
+        }
+        byte[] cipherText = aes.encrypt(key, plainText, iv, 1, true, null);
+        AESCipher parallel = new AESCipher(4);
+        
+        ProgressMonitor pm = new ProgressMonitor();
+        assertTrue(ByteArrays.equals(plainText, parallel.decrypt(key, cipherText, iv, pm)));
+        assertEquals(100, pm.getProgress());
+        
+        byte[] data = ByteArrays.returnCopy(cipherText);
+        assertEquals(plainText.length, parallel.decrypt(key, data, 0, data.length, iv, data, 0, null));
+        assertTrue(ByteArrays.equals(plainText, ByteArrays.cut(data, plainText.length)));
+        
+        key[0]++;
+        try {
+            parallel.decrypt(key, cipherText, iv, null);
+            fail("Should fail with KeePassCryptoException");
+        } catch (KeePassCryptoException e) {
+            // OK: padding corrupt
+        }
+        
+        pm = new ProgressMonitor();
+        pm.cancel();
+        assertNull(parallel.decrypt(key, cipherText, iv, pm));
+    }
 }
@@ -0,0 +1,72 @@
+package org.sperle.keepass.crypto.bc;
+
+import org.sperle.keepass.KeePassMobileIOTest;
+import org.sperle.keepass.crypto.KeePassCryptoException;
+import org.sperle.keepass.monitor.ProgressMonitor;
+import org.sperle.keepass.util.ByteArrays;
+
+public class AESKeyTransformTest extends KeePassMobileIOTest {
+    private static final byte[] SEED = new byte[]{101, 61, -33, -22, 70, 48, 52, -32, -2, 89, 45, 74, 99, -128, -9, 49, 121, 102, 29, -21, -85, 99, -62, -82, 60, 60, -73, -64, 45, 89, 92, 59};
+    private static final byte[] KEY = new byte[]{124, -22, 85, -99, -55, -81, 6, 6, -99, -128, -91, -49, 122, 112, -13, -64, 47, 99, 42, 51, -101, 60, -33, 22, 71, 48, 102, -32, -2, -1, 4, 74};
+    
+    public AESKeyTransformTest() {
+        super(5, "AESKeyTransformTest");
+    }
+
+    public void test(int testNumber) throws Throwable {
+        switch (testNumber) {
+        case 0:testParallel();break;
+        case 1:testSequential();break;
+        case 2:testCancel();break;
+        case 3:testInvalidKeyLength();break;
+        case 4:testProgress();break;
+        default:break;
+        }
+    }
+    
+    public void testParallel() throws KeePassCryptoException {
+        assertTransformedLikeAESCipher(new AESKeyTransform(true));
+    }
+    
+    public void testSequential() throws KeePassCryptoException {
+        assertTransformedLikeAESCipher(new AESKeyTransform(false));
+    }
+    
+    public void testCancel() throws KeePassCryptoException {
+        ProgressMonitor pm = new ProgressMonitor();
+        pm.cancel();
+        assertNull(new AESKeyTransform(true).transform(SEED, KEY, 6000, pm));
+        assertNull(new AESKeyTransform(false).transform(SEED, KEY, 6000, pm));
+    }
+    
+    public void testInvalidKeyLength() throws KeePassCryptoException {
+        try {
+            new AESKeyTransform().transform(SEED, new byte[20], 10, null);
+            fail("Should fail with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+    
+    private void assertTransformedLikeAESCipher(AESKeyTransform keyTransform) throws KeePassCryptoException {
+        AESCipher aes = new AESCipher();
+        int[] rounds = new int[] {0, 1, 2, 6000};
+        for (int i = 0; i < rounds.length; i++) {
+            byte[] expected = aes.encrypt(SEED, KEY, null, rounds[i], false, null);
+            assertTrue(ByteArrays.equals(expected, keyTransform.transform(SEED, KEY, rounds[i], null)));
+            assertTrue(ByteArrays.equals(expected, keyTransform.transform(SEED, KEY, rounds[i], new ProgressMonitor())));
+        }
+        // 16 byte key: only one lane
+        assertTrue(ByteArrays.equals(aes.encrypt(SEED, ByteArrays.cut(KEY, 16), null, 100, false, null), 
+                keyTransform.transform(SEED, ByteArrays.cut(KEY, 16), 100, null)));
+    }
+    
+    public void testProgress() throws KeePassCryptoException {
+        ProgressMonitor pm = new ProgressMonitor();
+        new AESKeyTransform(false).transform(SEED, KEY, AESKeyTransform.PROGRESS_INTERVAL * 2 + 1, pm);
+        assertEquals(100, pm.getProgress());
+        pm = new ProgressMonitor();
+        new AESKeyTransform(true).transform(SEED, KEY, AESKeyTransform.PROGRESS_INTERVAL * 2 + 1, pm);
+        assertEquals(100, pm.getProgress());
+    }
+}
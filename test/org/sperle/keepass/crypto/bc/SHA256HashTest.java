@@ -4,6 +4,7 @@ import java.io.UnsupportedEncodingException;
 
 import org.bouncycastle.util.encoders.Hex;
 import org.sperle.keepass.KeePassMobileIOTest;
+import org.sperle.keepass.crypto.HashSession;
 
 public class SHA256HashTest extends KeePassMobileIOTest {
     private static final String TEST_STRING = "Franz jagt im komplett verwahrlosten Taxi quer durch Bayern ÖÄÜöäüß _@!\"§$%&/()[]=*\\n";
@@ -11,12 +12,13 @@ public class SHA256HashTest extends KeePassMobileIOTest {
     private SHA256Hash sha256;
     
     public SHA256HashTest() {
-        super(1, "SHA256HashTest");
+        super(2, "SHA256HashTest");
     }
 
     public void test(int testNumber) throws Throwable {
         switch (testNumber) {
         case 0:testGetSHA256Digest();break;
+        case 1:testHashSession();break;
         default:break;
         }
     }
@@ -29,4 +31,13 @@ public class SHA256HashTest extends KeePassMobileIOTest {
 	assertEquals("437a36a93abaa84e1f7fb2b7027e8801310cbc0beef243f6f761a5c42257d826", 
 		new String(Hex.encode(sha256.getHash(new byte[][]{TEST_STRING.getBytes("UTF-8")}, null))));
     }
+    
+    public void testHashSession() throws UnsupportedEncodingException {
+        byte[] message = TEST_STRING.getBytes("UTF-8");
+        HashSession session = sha256.startHash();
+        session.update(message, 0, 10);
+        session.update(message, 10, 0);
+        session.update(message, 10, message.length - 10);
+        assertEquals("437a36a93abaa84e1f7fb2b7027e8801310cbc0beef243f6f761a5c42257d826", new String(Hex.encode(session.doFinal())));
+    }
 }
@@ -6,21 +6,27 @@ import org.sperle.keepass.KeePassMobileIOTest;
 
 public class J2meIOManagerTest extends KeePassMobileIOTest {
     private J2meIOManager io;
+    private String replaced;
+    private String deleted;
     
     public J2meIOManagerTest() {
-        super(2, "J2meIOManagerTest");
+        super(4, "J2meIOManagerTest");
     }
 
     public void test(int testNumber) throws Throwable {
         switch (testNumber) {
         case 0:testGetTempFilenameNew();break;
         case 1:testGetTempFilenameExists();break;
+        case 2:testCommitFailsOnClose();break;
+        case 3:testCommitFailsOnFlush();break;
         default:break;
         }
     }
     
     public void setUp() throws Exception {
         io = new J2meIOManager();
+        replaced = null;
+        deleted = null;
     }
 
     public void testGetTempFilenameNew() throws IOException {
@@ -45,4 +51,46 @@ public class J2meIOManagerTest extends KeePassMobileIOTest {
         };
         assertEquals("file:///root/test_3.tmp", io.getTempFilename("file:///root/test.kdb"));
     }
+    
+    public void testCommitFailsOnClose() throws IOException {
+        TestFileConnection conn = new TestFileConnection();
+        conn.failOnClose = true;
+        FileConnectionSaveSession session = new FileConnectionSaveSession(recordingManager(), "test.kdb", "test_0.tmp", conn);
+        session.write(new byte[10], 0, 10);
+        try {
+            session.commit();
+            fail("Should fail with IOException");
+        } catch (IOException e) {
+        }
+        assertNull(replaced); // truncated temp file must not replace the database
+        assertEquals("test_0.tmp", deleted);
+        assertTrue(conn.closed);
+    }
+    
+    public void testCommitFailsOnFlush() throws IOException {
+        TestFileConnection conn = new TestFileConnection();
+        conn.failOnFlush = true;
+        FileConnectionSaveSession session = new FileConnectionSaveSession(recordingManager(), "test.kdb", null, conn);
+        session.write(new byte[10], 0, 10);
+        try {
+            session.commit();
+            fail("Should fail with IOException");
+        } catch (IOException e) {
+        }
+        session.abort(); // already cleaned up by commit
+        assertEquals("test.kdb", deleted);
+        assertTrue(conn.closed);
+    }
+    
+    private J2meIOManager recordingManager() {
+        return new J2meIOManager() {
+            void replace(String filename, String tempFilename) throws IOException {
+                replaced = tempFilename;
+            }
+            
+            public void delete(String filename) throws IOException {
+                deleted = filename;
+            }
+        };
+    }
 }
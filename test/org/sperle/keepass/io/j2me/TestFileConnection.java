@@ -0,0 +1,150 @@
+package org.sperle.keepass.io.j2me;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+
+import javax.microedition.io.file.FileConnection;
+
+/**
+ * File connection without file, whose output stream can be prepared to fail on flush or close.
+ */
+public class TestFileConnection implements FileConnection
+{
+    boolean failOnFlush;
+    boolean failOnClose;
+    boolean closed;
+    
+    public OutputStream openOutputStream(long byteOffset) throws IOException {
+        return new OutputStream() {
+            public void write(int b) throws IOException {
+            }
+            
+            public void flush() throws IOException {
+                if(failOnFlush) throw new IOException("flush failed");
+            }
+            
+            public void close() throws IOException {
+                if(failOnClose) throw new IOException("close failed");
+            }
+        };
+    }
+    
+    public OutputStream openOutputStream() throws IOException {
+        return openOutputStream(0);
+    }
+    
+    public DataOutputStream openDataOutputStream() throws IOException {
+        return new DataOutputStream(openOutputStream());
+    }
+    
+    public InputStream openInputStream() throws IOException {
+        throw new IOException("no data");
+    }
+    
+    public DataInputStream openDataInputStream() throws IOException {
+        return new DataInputStream(openInputStream());
+    }
+    
+    public void close() throws IOException {
+        closed = true;
+    }
+    
+    public boolean isOpen() {
+        return !closed;
+    }
+    
+    public long totalSize() {
+        return 0;
+    }
+    
+    public long availableSize() {
+        return 0;
+    }
+    
+    public long usedSize() {
+        return 0;
+    }
+    
+    public long directorySize(boolean includeSubDirs) throws IOException {
+        return 0;
+    }
+    
+    public long fileSize() throws IOException {
+        return 0;
+    }
+    
+    public boolean canRead() {
+        return true;
+    }
+    
+    public boolean canWrite() {
+        return true;
+    }
+    
+    public boolean isHidden() {
+        return false;
+    }
+    
+    public void setReadable(boolean readable) throws IOException {
+    }
+    
+    public void setWritable(boolean writable) throws IOException {
+    }
+    
+    public void setHidden(boolean hidden) throws IOException {
+    }
+    
+    public Enumeration list() throws IOException {
+        return list(null, false);
+    }
+    
+    public Enumeration list(String filter, boolean includeHidden) throws IOException {
+        throw new IOException("no directory");
+    }
+    
+    public void create() throws IOException {
+    }
+    
+    public void mkdir() throws IOException {
+    }
+    
+    public boolean exists() {
+        return true;
+    }
+    
+    public boolean isDirectory() {
+        return false;
+    }
+    
+    public void delete() throws IOException {
+    }
+    
+    public void rename(String newName) throws IOException {
+    }
+    
+    public void truncate(long byteOffset) throws IOException {
+    }
+    
+    public void setFileConnection(String fileName) throws IOException {
+    }
+    
+    public String getName() {
+        return "test.kdb";
+    }
+    
+    public String getPath() {
+        return "/";
+    }
+    
+    public String getURL() {
+        return "file:///test.kdb";
+    }
+    
+    public long lastModified() {
+        return 0;
+    }
+}
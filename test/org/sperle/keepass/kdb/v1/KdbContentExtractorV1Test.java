@@ -0,0 +1,108 @@
+package org.sperle.keepass.kdb.v1;
+
+import org.sperle.keepass.KeePassMobileIOTest;
+import org.sperle.keepass.TestRandom;
+import org.sperle.keepass.kdb.KeePassDatabaseException;
+import org.sperle.keepass.util.BinaryData;
+import org.sperle.keepass.util.ByteArrays;
+import org.sperle.keepass.util.Passwords;
+
+public class KdbContentExtractorV1Test extends KeePassMobileIOTest {
+    private KeePassDatabaseV1 kdb;
+    private byte[] plainContentData;
+    
+    public KdbContentExtractorV1Test() {
+        super(4, "KdbContentExtractorV1Test");
+    }
+
+    public void test(int testNumber) throws Throwable {
+        switch (testNumber) {
+        case 0:testExtractAtOnce();break;
+        case 1:testExtractByteByByte();break;
+        case 2:testIgnoreDataAfterLastEntry();break;
+        case 3:testCorruptFieldSize();break;
+        default:break;
+        }
+    }
+    
+    public void setUp() throws Exception {
+        KeePassDatabaseV1 source = new KeePassDatabaseV1(new TestRandom());
+        KdbGroupV1 root = new KdbGroupV1();
+        root.setId(1);
+        root.setName("Root");
+        source.addGroup(root, null);
+        KdbGroupV1 child = new KdbGroupV1();
+        child.setId(2);
+        child.setName("Child");
+        source.addGroup(child, root);
+        KdbEntryV1 entry1 = new KdbEntryV1(null);
+        entry1.setId(new byte[]{0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15});
+        entry1.setTitle("Entry 1");
+        entry1.setPassword(Passwords.fromString("secret"));
+        source.addEntry(entry1, root);
+        KdbEntryV1 entry2 = new KdbEntryV1(null);
+        entry2.setId(new byte[]{15,14,13,12,11,10,9,8,7,6,5,4,3,2,1,0});
+        entry2.setTitle("Entry 2");
+        entry2.addAttachment("attachment.bin", new byte[5000]);
+        source.addEntry(entry2, child);
+        plainContentData = source.getPlainContentData(null, true);
+        
+        kdb = new KeePassDatabaseV1(new TestRandom());
+        kdb.setNumGroups(2);
+        kdb.setNumEntries(2);
+    }
+    
+    public void testExtractAtOnce() throws Exception {
+        KdbContentExtractorV1 extractor = new KdbContentExtractorV1(kdb, plainContentData.length);
+        extractor.update(plainContentData, 0, plainContentData.length);
+        assertTrue(extractor.isComplete());
+        assertContent();
+    }
+    
+    public void testExtractByteByByte() throws Exception {
+        KdbContentExtractorV1 extractor = new KdbContentExtractorV1(kdb, plainContentData.length);
+        for (int i = 0; i < plainContentData.length; i++) {
+            assertFalse(extractor.isComplete());
+            extractor.update(plainContentData, i, 1);
+        }
+        assertTrue(extractor.isComplete());
+        assertContent();
+    }
+    
+    public void testIgnoreDataAfterLastEntry() throws Exception {
+        byte[] data = ByteArrays.append(plainContentData, new byte[] {1,2,3});
+        KdbContentExtractorV1 extractor = new KdbContentExtractorV1(kdb, data.length);
+        extractor.update(data, 0, 100);
+        extractor.update(data, 100, data.length - 100);
+        assertTrue(extractor.isComplete());
+        assertContent();
+    }
+    
+    public void testCorruptFieldSize() throws Exception {
+        BinaryData.fromInt(plainContentData.length + 1, plainContentData, 2); // size of first field
+        KdbContentExtractorV1 extractor = new KdbContentExtractorV1(kdb, plainContentData.length);
+        extractor.update(plainContentData, 0, plainContentData.length); // error is held back
+        assertFalse(extractor.isComplete());
+        try {
+            extractor.checkComplete();
+            fail("Should fail with KeePassDatabaseException");
+        } catch (KeePassDatabaseException e) {
+            // OK
+        }
+    }
+    
+    private void assertContent() {
+        assertEquals(2, kdb.getGroups().size());
+        assertEquals(2, kdb.getEntries().size());
+        assertEquals("Root", ((KdbGroupV1)kdb.getGroups().elementAt(0)).getName());
+        assertEquals("Child", ((KdbGroupV1)kdb.getGroups().elementAt(1)).getName());
+        assertEquals(1, ((KdbGroupV1)kdb.getGroups().elementAt(1)).getTreeLevel());
+        KdbEntryV1 entry1 = (KdbEntryV1)kdb.getEntries().elementAt(0);
+        assertEquals("Entry 1", entry1.getTitle());
+        assertEquals("secret", Passwords.toString(entry1.getPassword()));
+        KdbEntryV1 entry2 = (KdbEntryV1)kdb.getEntries().elementAt(1);
+        assertEquals("Entry 2", entry2.getTitle());
+        assertEquals(2, entry2.getGroupId());
+        assertEquals(5000, entry2.getBinaryData().length);
+    }
+}
@@ -0,0 +1,87 @@
+package org.sperle.keepass.kdb.v1;
+
+import org.sperle.keepass.KeePassMobileIOTest;
+import org.sperle.keepass.TestRandom;
+import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.crypto.bc.SHA256Hash;
+import org.sperle.keepass.io.IOManager;
+import org.sperle.keepass.io.SaveSession;
+import org.sperle.keepass.util.ByteArrays;
+import org.sperle.keepass.util.Passwords;
+
+public class KdbContentWriterV1Test extends KeePassMobileIOTest {
+    private static final byte[] KEY = new byte[]{0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24,25,26,27,28,29,30,31};
+    private static final byte[] IV = new byte[]{15,14,13,12,11,10,9,8,7,6,5,4,3,2,1,0};
+    private KeePassDatabaseV1 kdb;
+    private IOManager io;
+    
+    public KdbContentWriterV1Test() {
+        super(3, "KdbContentWriterV1Test");
+    }
+
+    public void test(int testNumber) throws Throwable {
+        switch (testNumber) {
+        case 0:testWriteSmallBlocks();break;
+        case 1:testWriteBigBlocks();break;
+        case 2:testWriteEmpty();break;
+        default:break;
+        }
+    }
+    
+    public void setUp() throws Exception {
+        kdb = new KeePassDatabaseV1(new TestRandom());
+        KdbGroupV1 root = new KdbGroupV1();
+        root.setId(1);
+        root.setName("Root");
+        kdb.addGroup(root, null);
+        KdbGroupV1 child = new KdbGroupV1();
+        child.setId(2);
+        child.setName("Child");
+        kdb.addGroup(child, root);
+        KdbEntryV1 entry1 = new KdbEntryV1(null);
+        entry1.setId(new byte[]{0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15});
+        entry1.setTitle("Entry 1");
+        entry1.setPassword(Passwords.fromString("secret"));
+        kdb.addEntry(entry1, root);
+        KdbEntryV1 entry2 = new KdbEntryV1(null);
+        entry2.setId(new byte[]{15,14,13,12,11,10,9,8,7,6,5,4,3,2,1,0});
+        entry2.setTitle("Entry 2");
+        entry2.addAttachment("attachment.bin", new byte[5000]);
+        kdb.addEntry(entry2, child);
+        io = new TestIOManager();
+    }
+    
+    public void testWriteSmallBlocks() throws Exception {
+        assertWritten(64); // attachment entry is bigger than block
+    }
+    
+    public void testWriteBigBlocks() throws Exception {
+        assertWritten(4096);
+    }
+    
+    public void testWriteEmpty() throws Exception {
+        SaveSession out = io.startSave("empty.kdb");
+        KdbContentWriterV1 writer = new KdbContentWriterV1(new SHA256Hash().startHash(), new AESCipher().startEncryption(KEY, IV), out, 64);
+        byte[] hash = writer.finish();
+        writer.release();
+        out.commit();
+        
+        assertEquals(0, writer.getPlainContentLength());
+        assertTrue(ByteArrays.equals(new SHA256Hash().getHash(new byte[][] {new byte[0]}, null), hash));
+        assertEquals(0, new AESCipher().decrypt(KEY, io.loadBinary("empty.kdb", null), IV, null).length);
+    }
+    
+    private void assertWritten(int blockSize) throws Exception {
+        SaveSession out = io.startSave("written.kdb");
+        KdbContentWriterV1 writer = new KdbContentWriterV1(new SHA256Hash().startHash(), new AESCipher().startEncryption(KEY, IV), out, blockSize);
+        assertTrue(kdb.writeContent(writer, null, true));
+        byte[] hash = writer.finish();
+        writer.release();
+        out.commit();
+        
+        byte[] plainContentData = kdb.getPlainContentData(null, true);
+        assertEquals(plainContentData.length, writer.getPlainContentLength());
+        assertTrue(ByteArrays.equals(new SHA256Hash().getHash(new byte[][] {plainContentData}, null), hash));
+        assertTrue(ByteArrays.equals(plainContentData, new AESCipher().decrypt(KEY, io.loadBinary("written.kdb", null), IV, null)));
+    }
+}
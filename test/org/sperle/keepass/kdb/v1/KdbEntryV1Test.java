@@ -18,7 +18,7 @@ public class KdbEntryV1Test extends KeePassMobileIOTest {
     private KdbEntryV1 entry;
     
     public KdbEntryV1Test() {
-        super(19, "KdbEntryV1Test");
+        super(24, "KdbEntryV1Test");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -42,6 +42,11 @@ public class KdbEntryV1Test extends KeePassMobileIOTest {
         case 16:testCreationEncrypted();break;
         case 17:testIsInternal();break;
         case 18:testEventSupport();break;
+        case 19:testExtractLazy();break;
+        case 20:testExtractLazyChange();break;
+        case 21:testExtractLazyInternal();break;
+        case 22:testGetPlainContentLength();break;
+        case 23:testSerializationCache();break;
         default:break;
         }
     }
@@ -272,4 +277,140 @@ public class KdbEntryV1Test extends KeePassMobileIOTest {
         assertTrue(changeListenerworks[0]);
         assertTrue(changeListenerworks[1]);
     }
+    
+    public void testExtractLazy() throws Exception {
+        KdbEntryV1 source = createFullEntry();
+        byte[] entryData = source.getPlainContentData(false);
+        assertEquals(entryData.length, entry.extractLazy(entryData, 0));
+        ByteArrays.fillCompletelyWith(entryData, (byte)0);
+        
+        assertTrue(ByteArrays.equals(source.getId(), entry.getId()));
+        assertEquals(12, entry.getGroupId());
+        assertEquals(3, entry.getIconId());
+        assertTrue(entry.isDecoded(KdbEntryV1.FIELDTYPE_PASSWORD));
+        assertFalse(entry.isDecoded(KdbEntryV1.FIELDTYPE_TITLE));
+        assertFalse(entry.isDecoded(KdbEntryV1.FIELDTYPE_NOTES));
+        assertFalse(entry.isInternal());
+        
+        assertEquals("Test Entry", entry.getTitle());
+        assertTrue(entry.isDecoded(KdbEntryV1.FIELDTYPE_TITLE));
+        assertFalse(entry.isDecoded(KdbEntryV1.FIELDTYPE_NOTES));
+        assertEquals("geheim", Passwords.toString(entry.getPassword()));
+        assertEquals("http://www.keepass.org/", entry.getUrl());
+        assertEquals("testuser", entry.getUsername());
+        assertEquals("This is my little test note!", entry.getNotes());
+        assertEquals(source.getCreationTime(), entry.getCreationTime());
+        assertEquals(source.getLastModificationTime(), entry.getLastModificationTime());
+        assertEquals(source.getLastAccessTime(), entry.getLastAccessTime());
+        assertEquals(source.getExpirationTime(), entry.getExpirationTime());
+        assertEquals("attachment.bin", entry.getBinaryDescription());
+        assertFalse(entry.isDecoded(KdbEntryV1.FIELDTYPE_BINARYDATA));
+        assertTrue(ByteArrays.equals(new byte[]{1,2,3}, entry.getBinaryData()));
+        assertTrue(entry.isDecoded(KdbEntryV1.FIELDTYPE_BINARYDATA));
+        assertTrue(ByteArrays.equals(source.getPlainContentData(false), entry.getPlainContentData(false)));
+    }
+    
+    public void testExtractLazyChange() throws Exception {
+        KdbEntryV1 source = createFullEntry();
+        byte[] entryData = source.getPlainContentData(false);
+        entry.extractLazy(entryData, 0);
+        
+        entry.setTitle("Changed");
+        entry.removeAttachment();
+        assertFalse(entry.isDecoded(KdbEntryV1.FIELDTYPE_NOTES));
+        
+        source.setTitle("Changed");
+        source.removeAttachment();
+        assertTrue(ByteArrays.equals(source.getPlainContentData(true), entry.getPlainContentData(true)));
+        assertTrue(entry.isDecoded(KdbEntryV1.FIELDTYPE_NOTES));
+    }
+    
+    public void testExtractLazyInternal() throws Exception {
+        KdbEntryV1 source = new KdbEntryV1(null);
+        source.setId(new byte[]{0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15});
+        source.setTitle("Meta-Info");
+        source.setUsername("SYSTEM");
+        source.setUrl("$");
+        source.setPassword(Passwords.EMPTY_PASSWORD);
+        entry.extractLazy(source.getPlainContentData(false), 0);
+        
+        assertTrue(entry.isInternal());
+        assertFalse(entry.isDecoded(KdbEntryV1.FIELDTYPE_TITLE));
+        assertEquals("Meta-Info", entry.getTitle());
+    }
+    
+    private KdbEntryV1 createFullEntry() {
+        KdbGroupV1 group = new KdbGroupV1();
+        group.setId(12);
+        KdbEntryV1 source = new KdbEntryV1(null, new byte[]{0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15}, group);
+        source.setIconId(3);
+        source.setTitle("Test Entry");
+        source.setUrl("http://www.keepass.org/");
+        source.setUsername("testuser");
+        source.setPassword(Passwords.fromString("geheim"));
+        source.setNotes("This is my little test note!");
+        source.setExpirationTime(new KdbDate(2008, 12, 13, 13, 7, 49));
+        source.addAttachment("attachment.bin", new byte[]{1,2,3});
+        return source;
+    }
+    
+    public void testGetPlainContentLength() throws Exception {
+        KdbEntryV1 noId = new KdbEntryV1(null);
+        try {
+            noId.getPlainContentLength(false);
+            fail("Should fail with IllegalStateException");
+        } catch (IllegalStateException e) {
+            // OK: id not set
+        }
+        try {
+            noId.writePlainContentData(new byte[100], 0, false);
+            fail("Should fail with IllegalStateException");
+        } catch (IllegalStateException e) {
+            // OK: id not set
+        }
+        
+        KdbEntryV1 entry = createFullEntry();
+        entry.setNotes("Nötes € 𝄞");
+        assertEquals(entry.getPlainContentData(false).length, entry.getPlainContentLength(false));
+        assertEquals(entry.getPlainContentData(true).length, entry.getPlainContentLength(true));
+        entry.setPassword(new byte[0]);
+        assertEquals(entry.getPlainContentData(false).length, entry.getPlainContentLength(false));
+    }
+    
+    public void testSerializationCache() throws Exception {
+        KdbEntryV1 entry = createFullEntry();
+        assertNull(entry.getSerialized());
+        byte[] data = entry.getPlainContentData(false);
+        assertNotNull(entry.getSerialized());
+        assertEquals(-1, indexOf(entry.getSerialized(), "geheim".getBytes())); // password not cached
+        assertEquals(-1, indexOf(entry.getSerialized(), new byte[]{14, 0, 3, 0, 0, 0, 1, 2, 3})); // attachment not cached
+        assertTrue(ByteArrays.equals(data, entry.getPlainContentData(false)));
+        
+        entry.setPassword(Passwords.fromString("secret")); // serialized again on change
+        assertNull(entry.getSerialized());
+        byte[] changed = entry.getPlainContentData(false);
+        assertTrue(indexOf(changed, "secret".getBytes()) > -1);
+        assertTrue(ByteArrays.equals(changed, entry.getPlainContentData(false)));
+        
+        KdbEntryV1 copy = new KdbEntryV1(null);
+        copy.extract(changed, 0);
+        assertEquals("secret", Passwords.toString(copy.getPassword()));
+        assertEquals("This is my little test note!", copy.getNotes());
+        assertTrue(ByteArrays.equals(new byte[]{1,2,3}, copy.getBinaryData()));
+        
+        entry.access();
+        assertNull(entry.getSerialized());
+        entry.getPlainContentData(false);
+        entry.close();
+        assertNull(entry.getSerialized());
+    }
+    
+    private int indexOf(byte[] data, byte[] part) {
+        for (int i = 0; i + part.length <= data.length; i++) {
+            int j = 0;
+            while(j < part.length && data[i + j] == part[j]) j++;
+            if(j == part.length) return i;
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,125 @@
+package org.sperle.keepass.kdb.v1;
+
+import java.util.Vector;
+
+import org.sperle.keepass.KeePassMobileIOTest;
+import org.sperle.keepass.kdb.KdbGroup;
+
+public class KdbGroupTreeV1Test extends KeePassMobileIOTest {
+    private KdbGroupTreeV1 tree;
+    
+    public KdbGroupTreeV1Test() {
+        super(4, "KdbGroupTreeV1Test");
+    }
+
+    public void test(int testNumber) throws Throwable {
+        switch (testNumber) {
+        case 0:testAppendInFileOrder();break;
+        case 1:testLevelGap();break;
+        case 2:testInsertAndRemove();break;
+        case 3:testDuplicateIds();break;
+        default:break;
+        }
+    }
+    
+    public void setUp() throws Exception {
+        tree = new KdbGroupTreeV1();
+    }
+    
+    public void testAppendInFileOrder() throws Exception {
+        // +- 1
+        // |  +- 2
+        // |  |  +- 3
+        // |  +- 4
+        // +- 5
+        KdbGroup[] groups = append(new int[] {0, 1, 2, 1, 0});
+        assertEquals(2, tree.getRoots().size());
+        assertEquals(groups[0], tree.getRoots().elementAt(0));
+        assertEquals(groups[4], tree.getRoots().elementAt(1));
+        Vector children = tree.getChildren(groups[0]);
+        assertEquals(2, children.size());
+        assertEquals(groups[1], children.elementAt(0));
+        assertEquals(groups[3], children.elementAt(1));
+        assertEquals(groups[2], tree.getChildren(groups[1]).elementAt(0));
+        assertEquals(0, tree.getChildren(groups[4]).size());
+        assertNull(tree.getParent(groups[0]));
+        assertEquals(groups[1], tree.getParent(groups[2]));
+        assertEquals(groups[0], tree.getParent(groups[3]));
+        assertEquals(groups[2], tree.getLastDescendant(groups[1]));
+        assertEquals(groups[3], tree.getLastDescendant(groups[0]));
+        assertEquals(groups[3], tree.getGroup(4));
+        assertNull(tree.getGroup(6));
+        
+        children.removeAllElements(); // only a copy
+        assertEquals(2, tree.getChildren(groups[0]).size());
+    }
+    
+    public void testLevelGap() throws Exception {
+        // group 2 skips a level: it has no parent, but is the parent of group 3
+        KdbGroup[] groups = append(new int[] {0, 2, 3, 1});
+        assertNull(tree.getParent(groups[1]));
+        assertEquals(groups[1], tree.getParent(groups[2]));
+        assertEquals(groups[0], tree.getParent(groups[3]));
+        assertEquals(1, tree.getChildren(groups[0]).size());
+        assertEquals(1, tree.getRoots().size());
+    }
+    
+    public void testInsertAndRemove() throws Exception {
+        KdbGroup[] groups = append(new int[] {0, 1});
+        KdbGroupV1 group = new KdbGroupV1(3, groups[0]);
+        group.setTreeLevel(1);
+        tree.insert(group, groups[0]);
+        assertEquals(2, tree.getChildren(groups[0]).size());
+        assertEquals(group, tree.getChildren(groups[0]).elementAt(1));
+        assertEquals(groups[0], tree.getParent(group));
+        
+        tree.remove(groups[1]);
+        assertEquals(1, tree.getChildren(groups[0]).size());
+        assertNull(tree.getGroup(2));
+        tree.remove(group);
+        tree.remove(groups[0]);
+        assertEquals(0, tree.getRoots().size());
+        
+        append(new int[] {0});
+        tree.clear();
+        assertEquals(0, tree.getRoots().size());
+        assertNull(tree.getGroup(1));
+    }
+    
+    // appends groups with the ids 1..n and the given tree levels
+    private KdbGroup[] append(int[] levels) {
+        KdbGroup[] groups = new KdbGroup[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            KdbGroupV1 group = new KdbGroupV1();
+            group.setId(i + 1);
+            group.setTreeLevel(levels[i]);
+            tree.append(group, i == 0 ? null : groups[i - 1]);
+            groups[i] = group;
+        }
+        return groups;
+    }
+    
+    public void testDuplicateIds() throws Exception {
+        KdbGroup[] groups = append(new int[] {0, 1});
+        KdbGroupV1 duplicate = new KdbGroupV1();
+        duplicate.setId(1);
+        duplicate.setTreeLevel(0);
+        tree.append(duplicate, groups[1]);
+        assertSame(groups[0], tree.getGroup(1));
+        assertSame(groups[0], tree.getParent(groups[1]));
+        assertEquals(1, tree.getChildren(groups[0]).size());
+        assertEquals(0, tree.getChildren(duplicate).size());
+        assertEquals(2, tree.getRoots().size());
+        
+        tree.remove(duplicate);
+        assertSame(groups[0], tree.getGroup(1));
+        assertEquals(1, tree.getRoots().size());
+        assertSame(groups[0], tree.getRoots().elementAt(0));
+        
+        tree.append(duplicate, groups[1]);
+        tree.remove(groups[0]);
+        assertSame(duplicate, tree.getGroup(1));
+        assertEquals(1, tree.getRoots().size());
+        assertSame(duplicate, tree.getRoots().elementAt(0));
+    }
+}
@@ -12,7 +12,7 @@ public class KdbGroupV1Test extends KeePassMobileIOTest {
     private KdbGroupV1 group;
     
     public KdbGroupV1Test() {
-        super(12, "KdbGroupV1Test");
+        super(14, "KdbGroupV1Test");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -29,6 +29,8 @@ public class KdbGroupV1Test extends KeePassMobileIOTest {
         case 9:testGetPlainContentData();break;
         case 10:testCreation();break;
         case 11:testEventSupport();break;
+        case 12:testGetPlainContentLength();break;
+        case 13:testSerializationCache();break;
         default:break;
         }
     }
@@ -168,4 +170,46 @@ public class KdbGroupV1Test extends KeePassMobileIOTest {
         assertTrue(changeListenerworks[0]);
         assertTrue(changeListenerworks[1]);
     }
+    
+    public void testGetPlainContentLength() throws Exception {
+        KdbGroupV1 group = new KdbGroupV1();
+        try {
+            group.getPlainContentLength(false);
+            fail("Should fail with IllegalStateException");
+        } catch (IllegalStateException e) {
+            // OK: group id not set
+        }
+        try {
+            group.writePlainContentData(new byte[100], 0, false);
+            fail("Should fail with IllegalStateException");
+        } catch (IllegalStateException e) {
+            // OK: group id not set
+        }
+        group.setId(15);
+        assertEquals(group.getPlainContentData(false).length, group.getPlainContentLength(false));
+        group.setName("Grüppe €");
+        group.setIconId(3);
+        group.setTreeLevel(2);
+        assertEquals(group.getPlainContentData(false).length, group.getPlainContentLength(false));
+        assertEquals(group.getPlainContentData(true).length, group.getPlainContentLength(true));
+    }
+    
+    public void testSerializationCache() throws Exception {
+        KdbGroupV1 group = new KdbGroupV1();
+        group.setId(15);
+        group.setName("a1");
+        byte[] data = group.getPlainContentData(false);
+        assertNotNull(group.getSerialized());
+        assertTrue(ByteArrays.equals(data, group.getPlainContentData(false)));
+        assertTrue(ByteArrays.equals(new byte[]{1, 0, 4, 0, 0, 0, 15, 0, 0, 0, 2, 0, 3, 0, 0, 0, 97, 49, 0, -1, -1, 0, 0, 0, 0}, group.getPlainContentData(true)));
+        
+        group.setName("b2"); // serialized again on change
+        assertNull(group.getSerialized());
+        KdbGroupV1 copy = new KdbGroupV1();
+        copy.extract(group.getPlainContentData(false), 0);
+        assertEquals("b2", copy.getName());
+        
+        group.access();
+        assertNull(group.getSerialized());
+    }
 }
@@ -3,7 +3,9 @@ package org.sperle.keepass.kdb.v1;
 import org.sperle.keepass.KeePassMobileIOTest;
 import org.sperle.keepass.TestRandom;
 import org.sperle.keepass.crypto.CryptoManager;
+import org.sperle.keepass.crypto.KdbCipherSession;
 import org.sperle.keepass.crypto.bc.AESCipher;
+import org.sperle.keepass.crypto.bc.AESKeyTransform;
 import org.sperle.keepass.crypto.bc.SHA256Hash;
 import org.sperle.keepass.kdb.KeePassDatabaseException;
 import org.sperle.keepass.kdb.PerformanceStatistics;
@@ -17,7 +19,7 @@ public class KeePassDatabaseAESCryptoAlgorithmV1Test extends KeePassMobileIOTest
     private KeePassDatabaseAESCryptoAlgorithmV1 aes;
     
     public KeePassDatabaseAESCryptoAlgorithmV1Test() {
-        super(3, "KeePassDatabaseAESCryptoAlgorithmV1Test");
+        super(5, "KeePassDatabaseAESCryptoAlgorithmV1Test");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -25,6 +27,8 @@ public class KeePassDatabaseAESCryptoAlgorithmV1Test extends KeePassMobileIOTest
         case 0:testMissingCipher();break;
         case 1:testWrongAlgorithm();break;
         case 2:testEncryptDecrypt();break;
+        case 3:testEncryptKeyTransform();break;
+        case 4:testTransformedKey();break;
         default:break;
         }
     }
@@ -91,4 +95,39 @@ public class KeePassDatabaseAESCryptoAlgorithmV1Test extends KeePassMobileIOTest
 	kdb.verifyHeader();
 	return kdb;
     }
+    
+    public void testEncryptKeyTransform() throws Exception {
+        CryptoManager cm = new CryptoManager(null);
+        cm.addHash(new SHA256Hash());
+        cm.addKdbCipher(new AESCipher());
+        cm.addKeyTransform(new AESKeyTransform());
+        KeePassDatabaseAESCryptoAlgorithmV1 aesWithKeyTransform = new KeePassDatabaseAESCryptoAlgorithmV1(cm);
+        
+        byte[] masterSeed = new byte[]{32, -93, -19, 66, -56, 100, -89, -33, -91, 17, 12, -63, 88, -94, 88, -124};
+        byte[] masterSeed2 = new byte[]{101, 61, -33, -22, 70, 48, 52, -32, -2, 89, 45, 74, 99, -128, -9, 49, 121, 102, 29, -21, -85, 99, -62, -82, 60, 60, -73, -64, 45, 89, 92, 59};
+        byte[] encryptionIV = new byte[]{-13, -81, -32, -37, 102, -68, 28, -74, 28, 98, 19, 64, 126, 123, -117, 104};
+        byte[] plainContentData = new byte[100];
+        byte[] encrypted = aes.encrypt(plainContentData, masterSeed, masterSeed2, 6000, encryptionIV, MASTER_PASSWORD, null, null);
+        assertTrue(ByteArrays.equals(encrypted, aesWithKeyTransform.encrypt(plainContentData, masterSeed, masterSeed2, 6000, encryptionIV, MASTER_PASSWORD, null, null)));
+    }
+    
+    public void testTransformedKey() throws Exception {
+        byte[] masterSeed = new byte[]{32, -93, -19, 66, -56, 100, -89, -33, -91, 17, 12, -63, 88, -94, 88, -124};
+        byte[] masterSeed2 = new byte[]{101, 61, -33, -22, 70, 48, 52, -32, -2, 89, 45, 74, 99, -128, -9, 49, 121, 102, 29, -21, -85, 99, -62, -82, 60, 60, -73, -64, 45, 89, 92, 59};
+        byte[] encryptionIV = new byte[]{-13, -81, -32, -37, 102, -68, 28, -74, 28, 98, 19, 64, 126, 123, -117, 104};
+        byte[] plainContentData = new byte[100];
+        byte[] encrypted = aes.encrypt(plainContentData, masterSeed, masterSeed2, 6000, encryptionIV, MASTER_PASSWORD, null, null);
+        
+        byte[] transformedKey = aes.transformKey(masterSeed2, 6000, MASTER_PASSWORD, null, null);
+        KdbCipherSession cipher = aes.startEncryption(masterSeed, transformedKey, encryptionIV);
+        byte[] out = new byte[cipher.getUpdateOutputSize(100) + 32];
+        int length = cipher.update(plainContentData, 0, 100, out, 0);
+        length += cipher.doFinal(out, length);
+        assertTrue(ByteArrays.equals(encrypted, ByteArrays.cut(out, length)));
+        
+        PerformanceStatistics ps = new PerformanceStatistics();
+        byte[] data = ByteArrays.append(new byte[3], encrypted); // decrypted in place behind the first 3 bytes
+        assertEquals(100, aes.decrypt(data, 3, encrypted.length, masterSeed, transformedKey, encryptionIV, ps, null));
+        assertTrue(ByteArrays.equals(plainContentData, ByteArrays.append(new byte[0], data, 3, 100)));
+    }
 }
@@ -3,6 +3,7 @@ package org.sperle.keepass.kdb.v1;
 import org.sperle.keepass.KeePassMobileIOTest;
 import org.sperle.keepass.TestRandom;
 import org.sperle.keepass.crypto.CryptoManager;
+import org.sperle.keepass.crypto.KeePassCryptoException;
 import org.sperle.keepass.crypto.bc.AESCipher;
 import org.sperle.keepass.crypto.bc.RC4Cipher;
 import org.sperle.keepass.crypto.bc.SHA256Hash;
@@ -11,6 +12,7 @@ import org.sperle.keepass.kdb.AbstractKeePassDatabase;
 import org.sperle.keepass.kdb.DoNothingOnCloseStrategy;
 import org.sperle.keepass.kdb.KdbGroup;
 import org.sperle.keepass.kdb.KeePassDatabase;
+import org.sperle.keepass.kdb.KeePassDatabaseException;
 import org.sperle.keepass.rand.JdkRandom;
 import org.sperle.keepass.util.ByteArrays;
 import org.sperle.keepass.util.Passwords;
@@ -44,7 +46,7 @@ public class KeePassDatabaseManagerV1Test extends KeePassMobileIOTest {
     private KeePassDatabaseManagerV1 dm;
     
     public KeePassDatabaseManagerV1Test() {
-        super(10, "KeePassDatabaseManagerV1Test");
+        super(18, "KeePassDatabaseManagerV1Test");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -61,6 +63,14 @@ public class KeePassDatabaseManagerV1Test extends KeePassMobileIOTest {
         case 8:testChangeKeyEncRounds();break;
         //case 9:testChangePassword();break;
         case 9:testAddRemoveGroup();break;
+        case 10:testLoadStreaming();break;
+        case 11:testLoadStreamingKeyFile();break;
+        case 12:testLoadStreamingWrongPassword();break;
+        case 13:testLoadPipelined();break;
+        case 14:testLoadPipelinedWrongPassword();break;
+        case 15:testLoadLazy();break;
+        case 16:testSaveTransformedKeyCaching();break;
+        case 17:testCalibrateKeyEncRounds();break;
         default:break;
         }
     }
@@ -243,4 +253,143 @@ public class KeePassDatabaseManagerV1Test extends KeePassMobileIOTest {
         KeePassDatabase db3 = dm.load(TEST2_SAVED, TEST1_PASSWORD, null, false, null);
         assertEquals(8, db3.getNumGroups());
     }
+    
+    public void testLoadStreaming() throws Exception {
+        dm.setLoadMode(KeePassDatabaseManagerV1.LOAD_MODE_STREAMING);
+        KeePassDatabaseV1 db = (KeePassDatabaseV1)dm.load(TEST1_DB, TEST1_PASSWORD, null, false, null);
+        
+        assertFalse(db.hasChanged());
+        assertEquals(8, db.getNumGroups());
+        assertEquals(5, db.getNumEntries());
+        assertEquals(6000, db.getNumKeyEncRounds());
+        assertEquals(8, db.getGroups().size());
+        assertEquals(5, db.getEntries().size());
+        
+        assertEquals(2116301545, ((KdbGroupV1)db.getGroups().elementAt(0)).getId());
+        assertEquals("General", ((KdbGroupV1)db.getGroups().elementAt(0)).getName());
+        KdbEntryV1 entry = (KdbEntryV1)db.getEntries().elementAt(2);
+        assertEquals("Test Umlaute", entry.getTitle());
+        assertEquals("ÖÄÜöäüß", entry.getUsername());
+        assertEquals("_@!\"§$%&/()[]=*\\n", Passwords.toString(entry.getPassword()));
+        
+        assertEquals(2448, db.getPerformanceStatistics().getEncryptedContentDataLength());
+        assertEquals(2434, db.getPerformanceStatistics().getPlainContentDataLength());
+        
+        dm.save(db, TEST1_SAVED, null, true);
+        assertTrue(fileManager.equals(TEST1_DB, TEST1_SAVED));
+    }
+    
+    public void testLoadStreamingKeyFile() throws Exception {
+        dm.setLoadMode(KeePassDatabaseManagerV1.LOAD_MODE_STREAMING);
+        KeePassDatabaseV1 db = (KeePassDatabaseV1)dm.load(TEST5_DB, TEST5_PASSWORD, TEST5_KEYFILE, false, null);
+        
+        assertEquals(8, db.getGroups().size());
+        assertEquals(5, db.getEntries().size());
+        KdbEntryV1 entry = (KdbEntryV1)db.getEntries().elementAt(2);
+        assertEquals("Test Umlaute", entry.getTitle());
+        assertEquals("_@!\"§$%&/()[]=*\\n", Passwords.toString(entry.getPassword()));
+    }
+    
+    public void testLoadStreamingWrongPassword() throws Exception {
+        dm.setLoadMode(KeePassDatabaseManagerV1.LOAD_MODE_STREAMING);
+        assertWrongPasswordFails();
+    }
+    
+    public void testLoadPipelined() throws Exception {
+        dm.setLoadMode(KeePassDatabaseManagerV1.LOAD_MODE_PIPELINED);
+        KeePassDatabaseV1 db = (KeePassDatabaseV1)dm.load(TEST5_DB, TEST5_PASSWORD, TEST5_KEYFILE, false, null);
+        
+        assertFalse(db.hasChanged());
+        assertEquals(8, db.getGroups().size());
+        assertEquals(5, db.getEntries().size());
+        KdbEntryV1 entry = (KdbEntryV1)db.getEntries().elementAt(2);
+        assertEquals("Test Umlaute", entry.getTitle());
+        assertEquals("_@!\"§$%&/()[]=*\\n", Passwords.toString(entry.getPassword()));
+        
+        dm.save(db, TEST5_SAVED, null, true);
+        assertTrue(fileManager.equals(TEST5_DB, TEST5_SAVED));
+    }
+    
+    public void testLoadPipelinedWrongPassword() throws Exception {
+        dm.setLoadMode(KeePassDatabaseManagerV1.LOAD_MODE_PIPELINED);
+        assertWrongPasswordFails();
+    }
+    
+    public void testLoadLazy() throws Exception {
+        dm.setLazyEntryExtraction(true);
+        dm.setLoadMode(KeePassDatabaseManagerV1.LOAD_MODE_STREAMING);
+        KeePassDatabaseV1 db = (KeePassDatabaseV1)dm.load(TEST1_DB, TEST1_PASSWORD, null, true, null);
+        
+        assertFalse(db.hasChanged());
+        assertEquals(5, db.getEntries().size());
+        KdbEntryV1 entry = (KdbEntryV1)db.getEntries().elementAt(2);
+        assertFalse(entry.isDecoded(KdbEntryV1.FIELDTYPE_TITLE));
+        assertEquals("Test Umlaute", entry.getTitle());
+        assertEquals("ÖÄÜöäüß", entry.getUsername());
+        assertEquals("_@!\"§$%&/()[]=*\\n", Passwords.toString(entry.getPassword()));
+        
+        dm.save(db, TEST1_SAVED, null, true);
+        assertTrue(fileManager.equals(TEST1_DB, TEST1_SAVED));
+    }
+    
+    public void testSaveTransformedKeyCaching() throws Exception {
+        KeePassDatabaseV1 db = (KeePassDatabaseV1)dm.load(TEST1_DB, TEST1_PASSWORD, null, false, null);
+        assertNull(db.getTransformedKey()); // not cached by default
+        
+        dm.setTransformedKeyCaching(true);
+        db = (KeePassDatabaseV1)dm.load(TEST1_DB, TEST1_PASSWORD, null, false, null);
+        assertNotNull(db.getTransformedKey());
+        byte[] masterSeed2 = ByteArrays.returnCopy(db.getMasterSeed2());
+        rand.setRandomInt(new int[] {1, 2});
+        assertTrue(dm.save(db, TEST1_SAVED, null));
+        assertEquals(1, db.getMasterSeed()[0]);
+        assertEquals(2, db.getEncryptionIV()[0]);
+        assertTrue(ByteArrays.equals(masterSeed2, db.getMasterSeed2()));
+        assertEquals(5, dm.load(TEST1_SAVED, TEST1_PASSWORD, null, false, null).getNumEntries());
+        
+        // new master password needs a new key transformation
+        dm.setMasterPassword(db, Passwords.getEncodedMasterPassword("new password"));
+        assertNull(db.getTransformedKey());
+        rand.setRandomInt(new int[] {3, 4, 5});
+        assertTrue(dm.save(db, TEST1_SAVED, null));
+        assertEquals(5, db.getMasterSeed2()[0]);
+        assertNotNull(db.getTransformedKey());
+        assertEquals(5, dm.load(TEST1_SAVED, "new password", null, false, null).getNumEntries());
+    }
+    
+    public void testCalibrateKeyEncRounds() throws Exception {
+        KeePassDatabaseV1 db = (KeePassDatabaseV1)dm.load(TEST1_DB, TEST1_PASSWORD, null, false, null);
+        int rounds = dm.calibrateKeyEncRounds(db, 200, false);
+        assertTrue(rounds > 0);
+        assertEquals(6000, db.getNumKeyEncRounds());
+        assertFalse(db.hasChanged());
+        
+        rounds = dm.calibrateKeyEncRounds(db, 200, true);
+        assertEquals(rounds, db.getNumKeyEncRounds());
+        assertTrue(db.hasChanged());
+        
+        rand.setRandomInt(new int[] {1, 2, 3});
+        assertTrue(dm.save(db, TEST1_SAVED, null));
+        KeePassDatabase saved = dm.load(TEST1_SAVED, TEST1_PASSWORD, null, false, null);
+        assertEquals(rounds, saved.getNumKeyEncRounds());
+        
+        try {
+            dm.calibrateKeyEncRounds(db, 0, false);
+            fail("Should fail with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+    
+    private void assertWrongPasswordFails() throws Exception {
+        String[] wrongPasswords = new String[] {"wrong", "Test1", "test", "secret", "12345"};
+        for (int i = 0; i < wrongPasswords.length; i++) {
+            try {
+                dm.load(TEST1_DB, wrongPasswords[i], null, false, null);
+                fail("Should fail with KeePassCryptoException");
+            } catch (KeePassCryptoException e) {
+                // OK: padding corrupt, not reported as corrupt content
+            }
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.sperle.keepass.kdb.v1;
 
 import org.sperle.keepass.KeePassMobileIOTest;
 import org.sperle.keepass.TestRandom;
+import org.sperle.keepass.crypto.bc.RC4Cipher;
 import org.sperle.keepass.kdb.KdbEntry;
 import org.sperle.keepass.kdb.KdbGroup;
 import org.sperle.keepass.kdb.KeePassDatabaseException;
@@ -14,7 +15,7 @@ public class KeePassDatabaseV1Test extends KeePassMobileIOTest {
     private TestRandom rand;
     
     public KeePassDatabaseV1Test() {
-        super(25, "KeePassDatabaseV1Test");
+        super(33, "KeePassDatabaseV1Test");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -44,6 +45,14 @@ public class KeePassDatabaseV1Test extends KeePassMobileIOTest {
         case 22:testBackup();break;
         case 23:testMove();break;
         case 24:testExtractHeaderAndDeleteSensibleData();break;
+        case 25:testTransformedKeyCache();break;
+        case 26:testGroupIndex();break;
+        case 27:testEntryIndex();break;
+        case 28:testAddGroupBehindSubtree();break;
+        case 29:testGroupEntries();break;
+        case 30:testBackupClassification();break;
+        case 31:testDuplicateEntryIds();break;
+        case 32:testDuplicateGroupIds();break;
         default:break;
         }
     }
@@ -547,4 +556,214 @@ public class KeePassDatabaseV1Test extends KeePassMobileIOTest {
 	}
 	return header;
     }
+    
+    public void testTransformedKeyCache() throws Exception {
+        RC4Cipher cipher = new RC4Cipher();
+        cipher.init(new byte[] {1, 2, 3, 4});
+        kdb = new KeePassDatabaseV1(rand, cipher, false, "test.kdb", new byte[] {1}, null);
+        kdb.init();
+        assertNull(kdb.getTransformedKey());
+        
+        byte[] transformedKey = new byte[] {0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, -0x08, -0x07, -0x06, -0x05, -0x04, -0x03, -0x02, -0x01,
+                0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, -0x08, -0x07, -0x06, -0x05, -0x04, -0x03, -0x02, -0x01};
+        kdb.setTransformedKey(transformedKey);
+        assertTrue(ByteArrays.equals(transformedKey, kdb.getTransformedKey()));
+        
+        // masterSeed and IV change, masterSeed2 is kept
+        byte[] masterSeed2 = ByteArrays.returnCopy(kdb.getMasterSeed2());
+        rand.setRandomInt(new int[] {1, 2});
+        kdb.reinitBeforeSave();
+        assertEquals(1, kdb.getMasterSeed()[0]);
+        assertEquals(2, kdb.getEncryptionIV()[0]);
+        assertTrue(ByteArrays.equals(masterSeed2, kdb.getMasterSeed2()));
+        assertTrue(ByteArrays.equals(transformedKey, kdb.getTransformedKey()));
+        
+        // only valid for the rounds it was calculated with
+        kdb.setNumKeyEncRounds(6000);
+        assertNull(kdb.getTransformedKey());
+        kdb.setNumKeyEncRounds(KeePassDatabaseV1.DEFAULT_NUMKEYENCROUNDS);
+        assertTrue(ByteArrays.equals(transformedKey, kdb.getTransformedKey()));
+        
+        // new credentials delete the cached key
+        kdb.setMasterPassword(new byte[] {2});
+        assertNull(kdb.getTransformedKey());
+        rand.setRandomInt(new int[] {1, 2, 3});
+        kdb.reinitBeforeSave();
+        assertEquals(3, kdb.getMasterSeed2()[0]);
+    }
+    
+    public void testGroupIndex() throws Exception {
+        rand.setRandomInt(new int[]{1,2,2,3,4});
+        
+        KdbGroup root = kdb.createGroup(null);
+        KdbGroup group = kdb.createGroup(root);
+        KdbGroup other = kdb.createGroup(root); // id 2 is in use -> 3
+        KdbEntry entry = kdb.createEntry(group);
+        assertEquals(3, other.getId());
+        assertEquals(root, kdb.getGroup(1));
+        assertEquals(group, kdb.getGroup(2));
+        assertEquals(other, kdb.getGroup(3));
+        assertNull(kdb.getGroup(4));
+        assertEquals(group, kdb.getParentGroup(entry));
+        
+        kdb.moveEntry(entry, other);
+        assertEquals(other, kdb.getParentGroup(entry));
+        kdb.removeGroup(group);
+        assertNull(kdb.getGroup(2));
+        assertEquals(other, kdb.getGroup(3));
+    }
+    
+    public void testEntryIndex() throws Exception {
+        rand.setRandomInt(new int[]{1,2,3});
+        
+        KdbGroup root = kdb.createGroup(null);
+        KdbEntry entry1 = kdb.createEntry(root);
+        KdbEntry entry2 = kdb.createEntry(root);
+        assertEquals(entry1, kdb.getEntry(new byte[]{2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2}));
+        assertEquals(entry2, kdb.getEntry(ByteArrays.returnCopy(entry2.getId())));
+        assertNull(kdb.getEntry(new byte[16]));
+        
+        KdbEntryV1 shortId = new KdbEntryV1(null);
+        shortId.setId(new byte[]{1,2,3}); // no UUID -> not indexed
+        kdb.addEntry(shortId, root);
+        assertEquals(shortId, kdb.getEntry(new byte[]{1,2,3}));
+        
+        kdb.removeEntry(entry1);
+        assertNull(kdb.getEntry(new byte[]{2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2}));
+        assertEquals(entry2, kdb.getEntry(entry2.getId()));
+    }
+    
+    public void testAddGroupBehindSubtree() throws Exception {
+        rand.setRandomInt(new int[]{1,2,3,4});
+        
+        KdbGroup root = kdb.createGroup(null);
+        KdbGroup child = kdb.createGroup(root);
+        KdbGroup grandChild = kdb.createGroup(child);
+        KdbGroup newChild = kdb.createGroup(root);
+        
+        // assert:
+        // +- root
+        //    +- child
+        //    |  +- grandChild
+        //    +- newChild
+        assertEquals(newChild, kdb.getGroups().elementAt(3));
+        assertEquals(child, kdb.getParentGroup(grandChild));
+        assertEquals(root, kdb.getParentGroup(newChild));
+        assertEquals(2, kdb.getChildGroups(root).size());
+        assertEquals(1, kdb.getChildGroups(child).size());
+        assertEquals(2, kdb.getSiblingGroups(newChild).size());
+        assertEquals(root, kdb.getRootGroup(grandChild));
+        assertEquals("/"+root.getName()+"/"+child.getName()+"/"+grandChild.getName(), kdb.getGroupPath(grandChild));
+    }
+    
+    public void testGroupEntries() throws Exception {
+        rand.setRandomInt(new int[]{1,2,3,4,5});
+        
+        KdbGroup group1 = kdb.createGroup(null);
+        KdbGroup group2 = kdb.createGroup(null);
+        KdbEntry entry1 = kdb.createEntry(group1);
+        KdbEntry entry2 = kdb.createEntry(group1);
+        KdbEntryV1 meta = new KdbEntryV1(null);
+        meta.setId(new byte[]{0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15});
+        meta.setTitle("Meta-Info");
+        meta.setUsername("SYSTEM");
+        meta.setUrl("$");
+        meta.setPassword(Passwords.EMPTY_PASSWORD);
+        meta.setInternal();
+        kdb.addEntry(meta, group1);
+        
+        assertEquals(2, kdb.getEntries(group1).size()); // without meta info
+        assertEquals(entry1, kdb.getEntries(group1).elementAt(0));
+        assertEquals(entry2, kdb.getEntries(group1).elementAt(1));
+        assertTrue(kdb.isEmpty(group2));
+        assertEquals(0, kdb.getEntries(null).size());
+        
+        kdb.moveEntry(entry1, group2);
+        assertEquals(1, kdb.getEntries(group1).size());
+        assertEquals(entry1, kdb.getEntries(group2).elementAt(0));
+        ((KdbEntryV1)entry2).setGroupId(group2.getId());
+        assertEquals(0, kdb.getEntries(group1).size());
+        assertEquals(2, kdb.getEntries(group2).size());
+        
+        kdb.removeEntry(entry1);
+        assertEquals(1, kdb.getEntries(group2).size());
+        ((KdbEntryV1)entry1).setGroupId(group1.getId()); // removed entries are not indexed anymore
+        assertEquals(0, kdb.getEntries(group1).size());
+    }
+    
+    public void testBackupClassification() {
+        rand.setRandomInt(new int[]{1,2,3,4,5,6});
+        
+        KdbGroupV1 general = (KdbGroupV1) kdb.createGroup(null);
+        general.setName("General");
+        KdbGroupV1 backup = (KdbGroupV1) kdb.createGroup(null);
+        backup.setName("Backup");
+        KdbGroup deep = kdb.createGroup(kdb.createGroup(backup));
+        KdbEntry backupEntry = kdb.createEntry(deep);
+        KdbEntry entry = kdb.createEntry(general);
+        
+        assertEquals(backup, kdb.getBackupGroup());
+        assertEquals(backup, kdb.getRootGroup(deep));
+        assertEquals(backup, kdb.getRootGroup(backupEntry));
+        assertTrue(kdb.isBackupEntry(backupEntry));
+        assertFalse(kdb.isBackupEntry(entry));
+        
+        // renaming invalidates the backup group (identified by name)
+        backup.setName("Old Backup");
+        general.setName("Backup");
+        assertEquals(general, kdb.getBackupGroup());
+        assertFalse(kdb.isBackupEntry(backupEntry));
+        assertTrue(kdb.isBackupEntry(entry));
+        
+        // flagged backup group
+        kdb.setBackupGroup(backup);
+        assertEquals(backup, kdb.getBackupGroup());
+        assertTrue(kdb.isBackupEntry(backupEntry));
+        assertFalse(kdb.isBackupEntry(entry));
+    }
+    
+    public void testDuplicateEntryIds() throws Exception {
+        rand.setRandomInt(new int[]{1,2});
+        
+        KdbGroup root = kdb.createGroup(null);
+        KdbEntry entry = kdb.createEntry(root);
+        kdb.extractEntry(((KdbEntryV1)entry).getPlainContentData(false), 0); // same id, as in a file
+        KdbEntry duplicate = (KdbEntry) kdb.getEntries().lastElement();
+        assertNotSame(entry, duplicate);
+        assertSame(entry, kdb.getEntry(entry.getId()));
+        
+        kdb.removeEntry(duplicate);
+        assertSame(entry, kdb.getEntry(entry.getId()));
+        assertSame(entry, kdb.getEntries().elementAt(0));
+        assertSame(entry, kdb.getEntries(root).elementAt(0));
+        
+        kdb.extractEntry(((KdbEntryV1)entry).getPlainContentData(false), 0);
+        duplicate = (KdbEntry) kdb.getEntries().lastElement();
+        kdb.removeEntry(entry);
+        assertSame(duplicate, kdb.getEntry(entry.getId()));
+        assertSame(duplicate, kdb.getEntries(root).elementAt(0));
+    }
+    
+    public void testDuplicateGroupIds() throws Exception {
+        rand.setRandomInt(new int[]{1,2,3});
+        
+        KdbGroup root = kdb.createGroup(null);
+        KdbGroup child = kdb.createGroup(root);
+        kdb.extractGroup(((KdbGroupV1)root).getPlainContentData(false), 0); // same id, as in a file
+        KdbGroup duplicate = (KdbGroup) kdb.getGroups().lastElement();
+        assertNotSame(root, duplicate);
+        
+        KdbGroup duplicateChild = kdb.createGroup(duplicate);
+        assertSame(duplicateChild, kdb.getGroups().elementAt(3)); // behind the duplicate, not behind the first group
+        assertSame(duplicate, kdb.getParentGroup(duplicateChild));
+        
+        kdb.removeGroup(duplicateChild);
+        kdb.removeGroup(duplicate);
+        assertEquals(2, kdb.getGroups().size());
+        assertSame(root, kdb.getGroups().elementAt(0));
+        assertSame(child, kdb.getGroups().elementAt(1));
+        assertEquals(1, kdb.getRootGroups().size());
+        assertSame(root, kdb.getRootGroups().elementAt(0));
+        assertSame(child, kdb.getChildGroups(root).elementAt(0));
+    }
 }
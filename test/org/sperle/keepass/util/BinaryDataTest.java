@@ -5,7 +5,7 @@ import org.sperle.keepass.KeePassMobileIOTest;
 public class BinaryDataTest extends KeePassMobileIOTest {
 
     public BinaryDataTest() {
-        super(10, "BinaryDataTest");
+        super(11, "BinaryDataTest");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -20,6 +20,7 @@ public class BinaryDataTest extends KeePassMobileIOTest {
         case 7:testPassword();break;
         case 8:testUnsignedByte();break;
         case 9:testCharArray();break;
+        case 10:testWriteString();break;
         default:break;
         }
     }
@@ -110,4 +111,19 @@ public class BinaryDataTest extends KeePassMobileIOTest {
 	assertEquals(0, BinaryData.toUnsignedByte(new byte[]{0}, 0));
 	assertEquals(127, BinaryData.toUnsignedByte(new byte[]{127}, 0));
     }
+    
+    public void testWriteString() {
+        assertEquals(11, BinaryData.getUtf8Length("Test Däta!"));
+        assertEquals(3, BinaryData.getUtf8Length("€"));
+        assertEquals(BinaryData.getLength("a𝄞b") - 1, BinaryData.getUtf8Length("a𝄞b"));
+        
+        byte[] result = new byte[14];
+        assertEquals(13, BinaryData.writeString("Test Däta!", result, 1));
+        assertTrue(ByteArrays.equals(new byte[]{0, 84, 101, 115, 116, 32, 68, -61, -92, 116, 97, 33, 0, 0}, result));
+        
+        String s = "€ü𝄞x";
+        result = new byte[BinaryData.getLength(s)];
+        assertEquals(result.length, BinaryData.writeString(s, result, 0));
+        assertTrue(ByteArrays.equals(BinaryData.fromString(s), result));
+    }
 }
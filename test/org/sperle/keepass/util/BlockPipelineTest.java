@@ -0,0 +1,97 @@
+package org.sperle.keepass.util;
+
+import org.sperle.keepass.KeePassMobileIOTest;
+
+public class BlockPipelineTest extends KeePassMobileIOTest {
+
+    public BlockPipelineTest() {
+        super(4, "BlockPipelineTest");
+    }
+
+    public void test(int testNumber) throws Throwable {
+        switch (testNumber) {
+        case 0:testPublishAndTake();break;
+        case 1:testConsumersSeeAllBlocks();break;
+        case 2:testAbortStopsConsumer();break;
+        case 3:testWipe();break;
+        default:break;
+        }
+    }
+    
+    public void testPublishAndTake() throws Exception {
+        BlockPipeline pipeline = new BlockPipeline(2, 4, 1);
+        pipeline.nextFreeBlock()[0] = 1;
+        pipeline.publish(1);
+        pipeline.nextFreeBlock()[0] = 2;
+        pipeline.publish(2);
+        
+        int index = pipeline.take(0);
+        assertEquals(1, pipeline.getBlock(index)[0]);
+        assertEquals(1, pipeline.getLength(index));
+        pipeline.release(0);
+        
+        pipeline.finish();
+        index = pipeline.take(0);
+        assertEquals(2, pipeline.getBlock(index)[0]);
+        assertEquals(2, pipeline.getLength(index));
+        pipeline.release(0);
+        assertEquals(-1, pipeline.take(0));
+    }
+    
+    public void testConsumersSeeAllBlocks() throws Exception {
+        final BlockPipeline pipeline = new BlockPipeline(3, 1, 2);
+        final int[] sums = new int[2];
+        Thread[] consumers = new Thread[2];
+        for (int i = 0; i < consumers.length; i++) {
+            final int consumer = i;
+            consumers[i] = new Thread() {
+                public void run() {
+                    try {
+                        int index;
+                        while((index = pipeline.take(consumer)) > -1) {
+                            sums[consumer] += pipeline.getBlock(index)[0];
+                            pipeline.release(consumer);
+                        }
+                    } catch (InterruptedException e) {}
+                }
+            };
+            consumers[i].start();
+        }
+        for (int i = 1; i <= 100; i++) {
+            pipeline.nextFreeBlock()[0] = (byte)(i % 10);
+            pipeline.publish(1);
+        }
+        pipeline.finish();
+        consumers[0].join();
+        consumers[1].join();
+        assertEquals(450, sums[0]);
+        assertEquals(450, sums[1]);
+    }
+    
+    public void testAbortStopsConsumer() throws Exception {
+        final BlockPipeline pipeline = new BlockPipeline(1, 1, 1);
+        final int[] result = new int[] {0};
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    result[0] = pipeline.take(0);
+                } catch (InterruptedException e) {}
+            }
+        };
+        consumer.start();
+        pipeline.abort();
+        consumer.join();
+        assertEquals(-1, result[0]);
+        assertTrue(pipeline.isAborted());
+        assertNull(pipeline.nextFreeBlock());
+    }
+    
+    public void testWipe() throws Exception {
+        BlockPipeline pipeline = new BlockPipeline(1, 2, 1);
+        byte[] block = pipeline.nextFreeBlock();
+        block[0] = 1;
+        block[1] = 2;
+        pipeline.wipe();
+        assertTrue(ByteArrays.equals(new byte[] {0,0}, block));
+    }
+}
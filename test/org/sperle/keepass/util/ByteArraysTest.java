@@ -6,7 +6,7 @@ import org.sperle.keepass.KeePassMobileIOTest;
 public class ByteArraysTest extends KeePassMobileIOTest {
 
     public ByteArraysTest() {
-        super(9, "ByteArraysTest");
+        super(10, "ByteArraysTest");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -20,6 +20,7 @@ public class ByteArraysTest extends KeePassMobileIOTest {
         case 6:testCut();break;
         case 7:testFillCompletelyWith();break;
         case 8:testReturnCopy();break;
+        case 9:testFillWith();break;
         default:break;
         }
     }
@@ -107,4 +108,16 @@ public class ByteArraysTest extends KeePassMobileIOTest {
         assertTrue(ByteArrays.equals(from, to));
         assertFalse(from.equals(to));
     }
+    
+    public void testFillWith() {
+        byte[] target = new byte[] {1,2,3,4};
+        ByteArrays.fillWith(target, 1, 2, (byte)0);
+        assertTrue(ByteArrays.equals(new byte[] {1,0,0,4}, target));
+        ByteArrays.fillWith(target, 0, 0, (byte)9);
+        assertTrue(ByteArrays.equals(new byte[] {1,0,0,4}, target));
+        try {
+            ByteArrays.fillWith(target, 3, 2, (byte)0);
+            fail("Should fail with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {}
+    }
 }
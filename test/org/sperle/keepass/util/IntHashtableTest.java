@@ -0,0 +1,71 @@
+package org.sperle.keepass.util;
+
+import org.sperle.keepass.KeePassMobileIOTest;
+
+public class IntHashtableTest extends KeePassMobileIOTest {
+
+    public IntHashtableTest() {
+        super(3, "IntHashtableTest");
+    }
+
+    public void test(int testNumber) throws Throwable {
+        switch (testNumber) {
+        case 0:testPutGet();break;
+        case 1:testRemove();break;
+        case 2:testGrow();break;
+        default:break;
+        }
+    }
+    
+    public void testPutGet() throws Exception {
+        IntHashtable table = new IntHashtable();
+        assertNull(table.get(0));
+        assertNull(table.put(0, "zero"));
+        assertNull(table.put(-7, "minus seven"));
+        assertEquals("zero", table.get(0));
+        assertEquals("minus seven", table.get(-7));
+        assertEquals("zero", table.put(0, "null"));
+        assertEquals("null", table.get(0));
+        assertEquals(2, table.size());
+        assertTrue(table.containsKey(-7));
+        assertFalse(table.containsKey(7));
+        try {
+            table.put(1, null);
+            fail("Should fail with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+    
+    public void testRemove() throws Exception {
+        IntHashtable table = new IntHashtable();
+        for (int i = 0; i < 10; i++) { // keys that collide in a table of 16 slots
+            table.put(i * 16, new Integer(i));
+        }
+        assertEquals(new Integer(3), table.remove(48));
+        assertNull(table.remove(48));
+        assertEquals(9, table.size());
+        for (int i = 0; i < 10; i++) { // all other keys are still reachable
+            if(i != 3) assertEquals(new Integer(i), table.get(i * 16));
+        }
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get(0));
+    }
+    
+    public void testGrow() throws Exception {
+        IntHashtable table = new IntHashtable(2);
+        for (int i = 0; i < 1000; i++) {
+            table.put(i * 31 - 500, new Integer(i));
+        }
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i += 2) {
+            table.remove(i * 31 - 500);
+        }
+        assertEquals(500, table.size());
+        for (int i = 0; i < 1000; i++) {
+            if(i % 2 == 0) assertNull(table.get(i * 31 - 500));
+            else assertEquals(new Integer(i), table.get(i * 31 - 500));
+        }
+    }
+}
@@ -6,7 +6,7 @@ import org.sperle.keepass.kdb.KdbDate;
 public class KeePassBinaryFieldsTest extends KeePassMobileIOTest {
 
     public KeePassBinaryFieldsTest() {
-        super(9, "KeePassBinaryFieldsTest");
+        super(10, "KeePassBinaryFieldsTest");
     }
 
     public void test(int testNumber) throws Throwable {
@@ -20,6 +20,7 @@ public class KeePassBinaryFieldsTest extends KeePassMobileIOTest {
         case 6:testEntryTerminator();break;
         case 7:testFromByteArray();break;
         case 8:testFromCharArray();break;
+        case 9:testWriteFields();break;
         default:break;
         }
     }
@@ -59,4 +60,27 @@ public class KeePassBinaryFieldsTest extends KeePassMobileIOTest {
     public void testFromByteArray() {
         assertTrue(ByteArrays.equals(new byte[]{4, 0, 3, 0, 0, 0, 9, -1, 3}, KeePassBinaryFields.fromByteArray(4, new byte[]{9, -1, 3})));
     }
+    
+    public void testWriteFields() {
+        byte[] result = new byte[KeePassBinaryFields.INTEGER_FIELD_LENGTH + KeePassBinaryFields.UNSIGNED_SHORT_FIELD_LENGTH
+                + KeePassBinaryFields.getStringFieldLength("Test Group") + KeePassBinaryFields.DATE_FIELD_LENGTH
+                + KeePassBinaryFields.TERMINATOR_FIELD_LENGTH];
+        int offset = KeePassBinaryFields.writeInt(1, 2116301545, result, 0);
+        offset = KeePassBinaryFields.writeUnsignedShort(11, 9999, result, offset);
+        offset = KeePassBinaryFields.writeString(2, "Test Group", result, offset);
+        offset = KeePassBinaryFields.writeDate(3, new KdbDate(2008, 12, 13, 12, 58, 55), result, offset);
+        offset = KeePassBinaryFields.writeTerminator(KeePassBinaryFields.GROUP_TERMINATOR, result, offset);
+        assertEquals(result.length, offset);
+        assertTrue(ByteArrays.equals(new byte[]{1, 0, 4, 0, 0, 0, -23, 50, 36, 126, 11, 0, 2, 0, 0, 0, 15, 39,
+                2, 0, 11, 0, 0, 0, 84, 101, 115, 116, 32, 71, 114, 111, 117, 112, 0, 3, 0, 5, 0, 0, 0, 31, 99, 26, -50, -73,
+                -1, -1, 0, 0, 0, 0}, result));
+        
+        result = new byte[KeePassBinaryFields.getStringFieldLength("") + 9 + 17];
+        offset = KeePassBinaryFields.writeString(2, "", result, 0);
+        offset = KeePassBinaryFields.writeByteArray(4, new byte[]{9, -1, 3}, result, offset);
+        offset = KeePassBinaryFields.writePassword(2, new byte[]{84, 101, 115, 116, 32, 71, 114, 111, 117, 112}, result, offset);
+        assertEquals(result.length, offset);
+        assertTrue(ByteArrays.equals(new byte[]{2, 0, 1, 0, 0, 0, 0, 4, 0, 3, 0, 0, 0, 9, -1, 3,
+                2, 0, 11, 0, 0, 0, 84, 101, 115, 116, 32, 71, 114, 111, 117, 112, 0}, result));
+    }
 }
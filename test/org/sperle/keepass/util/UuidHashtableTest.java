@@ -0,0 +1,77 @@
+package org.sperle.keepass.util;
+
+import org.sperle.keepass.KeePassMobileIOTest;
+
+public class UuidHashtableTest extends KeePassMobileIOTest {
+
+    public UuidHashtableTest() {
+        super(3, "UuidHashtableTest");
+    }
+
+    public void test(int testNumber) throws Throwable {
+        switch (testNumber) {
+        case 0:testPutGet();break;
+        case 1:testRemove();break;
+        case 2:testInvalidId();break;
+        default:break;
+        }
+    }
+    
+    public void testPutGet() throws Exception {
+        UuidHashtable table = new UuidHashtable(2);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(table.put(uuid(i), new Integer(i)));
+        }
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(new Integer(i), table.get(uuid(i)));
+        }
+        assertNull(table.get(uuid(1000)));
+        assertEquals(new Integer(5), table.put(uuid(5), "five"));
+        assertEquals("five", table.get(ByteArrays.returnCopy(uuid(5)))); // compared by value
+        assertEquals(1000, table.size());
+        
+        byte[] high = new byte[16]; // only differs in the first half
+        high[0] = 1;
+        assertFalse(table.containsKey(high));
+        table.put(high, "high");
+        assertEquals("high", table.get(high));
+        assertEquals(new Integer(0), table.get(uuid(0)));
+    }
+    
+    public void testRemove() throws Exception {
+        UuidHashtable table = new UuidHashtable();
+        for (int i = 0; i < 100; i++) {
+            table.put(uuid(i), new Integer(i));
+        }
+        for (int i = 0; i < 100; i += 3) {
+            assertEquals(new Integer(i), table.remove(uuid(i)));
+        }
+        assertNull(table.remove(uuid(0)));
+        for (int i = 0; i < 100; i++) {
+            if(i % 3 == 0) assertNull(table.get(uuid(i)));
+            else assertEquals(new Integer(i), table.get(uuid(i)));
+        }
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get(uuid(1)));
+    }
+    
+    public void testInvalidId() throws Exception {
+        assertTrue(UuidHashtable.isUuid(new byte[16]));
+        assertFalse(UuidHashtable.isUuid(new byte[15]));
+        assertFalse(UuidHashtable.isUuid(null));
+        try {
+            new UuidHashtable().put(new byte[15], "short");
+            fail("Should fail with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+    
+    private static byte[] uuid(int i) {
+        byte[] uuid = new byte[16];
+        BinaryData.fromInt(i, uuid, 12);
+        return uuid;
+    }
+}